@@ -0,0 +1,106 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning the text cut into many short documents, one call per document versus one call per batch
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BatchBenchmark
+{
+    /**
+     * the length of every document, like titles or queries
+     */
+    @Param({"32"})
+    public int documentLength;
+
+    private String[] docs;
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        docs = new String[(corpus.text.length() + documentLength - 1) / documentLength];
+        for (int d = 0; d < docs.length; ++d)
+        {
+            docs[d] = corpus.text.substring(d * documentLength, Math.min(corpus.text.length(), (d + 1) * documentLength));
+        }
+    }
+
+    @Benchmark
+    public BitSet matchesPerDocument(Corpus corpus)
+    {
+        BitSet matched = new BitSet(docs.length);
+        for (int d = 0; d < docs.length; ++d)
+        {
+            if (corpus.acdat.matches(docs[d])) matched.set(d);
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public BitSet matchesBatch(Corpus corpus)
+    {
+        return corpus.acdat.matchesBatch(docs);
+    }
+
+    @Benchmark
+    public int parseTextPerDocument(Corpus corpus)
+    {
+        int count = 0;
+        for (String doc : docs)
+        {
+            count += corpus.acdat.parseText(doc).size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int parseBatch(Corpus corpus)
+    {
+        Counter counter = new Counter();
+        corpus.acdat.parseBatch(docs, counter);
+        return counter.count;
+    }
+
+    private static class Counter implements AhoCorasickDoubleArrayTrie.IHitBatch<String>
+    {
+        int count;
+
+        @Override
+        public void hit(int doc, int begin, int end, String value)
+        {
+            ++count;
+        }
+    }
+}
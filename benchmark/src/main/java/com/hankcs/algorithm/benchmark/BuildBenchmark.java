@@ -0,0 +1,79 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.BuildOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build an automaton from the bundled dictionaries
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BuildBenchmark
+{
+    /**
+     * the number of build threads, 0 to build in the calling thread
+     */
+    @Param({"0", "2", "4"})
+    public int threads;
+
+    private BuildOptions options;
+
+    @Setup
+    public void setup()
+    {
+        options = new BuildOptions();
+        if (threads > 0)
+        {
+            options.setExecutor(Executors.newFixedThreadPool(threads));
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        ExecutorService executor = options.getExecutor();
+        if (executor != null)
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public AhoCorasickDoubleArrayTrie<String> build(Corpus corpus)
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(corpus.dictionary, options);
+        return acdat;
+    }
+}
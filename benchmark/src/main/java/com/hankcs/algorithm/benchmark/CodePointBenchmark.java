@@ -0,0 +1,128 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.BuildOptions;
+import com.hankcs.algorithm.CodePointAhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning text made of supplementary characters, by UTF-16 units versus by code points. The corpus is moved out of
+ * the BMP: CJK ideographs to CJK Extension B, ASCII letters to emoji.
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CodePointBenchmark
+{
+    private String text;
+    private AhoCorasickDoubleArrayTrie<String> utf16;
+    private AhoCorasickDoubleArrayTrie<String> utf16Compact;
+    private CodePointAhoCorasickDoubleArrayTrie<String> codePoint;
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        TreeMap<String, String> dictionary = new TreeMap<String, String>();
+        for (Map.Entry<String, String> entry : corpus.dictionary.entrySet())
+        {
+            dictionary.put(toSupplementary(entry.getKey()), entry.getValue());
+        }
+        text = toSupplementary(corpus.text);
+        utf16 = new AhoCorasickDoubleArrayTrie<String>();
+        utf16.build(dictionary);
+        utf16Compact = new AhoCorasickDoubleArrayTrie<String>();
+        utf16Compact.build(dictionary, new BuildOptions().setCompactAlphabet(true));
+        codePoint = new CodePointAhoCorasickDoubleArrayTrie<String>();
+        codePoint.build(dictionary);
+    }
+
+    private static String toSupplementary(String text)
+    {
+        StringBuilder sb = new StringBuilder(text.length() * 2);
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            if (c >= '一' && c <= '鿿')
+                sb.appendCodePoint(0x20000 + c - '一');
+            else if (c >= 'a' && c <= 'z')
+                sb.appendCodePoint(0x1F600 + c - 'a');
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public int utf16()
+    {
+        final int[] count = new int[1];
+        utf16.parseText(text, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                ++count[0];
+            }
+        });
+        return count[0];
+    }
+
+    @Benchmark
+    public int utf16CompactAlphabet()
+    {
+        final int[] count = new int[1];
+        utf16Compact.parseText(text, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                ++count[0];
+            }
+        });
+        return count[0];
+    }
+
+    @Benchmark
+    public int codePoint()
+    {
+        final int[] count = new int[1];
+        codePoint.parseText(text, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                ++count[0];
+            }
+        });
+        return count[0];
+    }
+}
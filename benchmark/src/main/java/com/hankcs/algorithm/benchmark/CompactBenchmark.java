@@ -0,0 +1,82 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.BuildOptions;
+import com.hankcs.algorithm.CompactAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.HitBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the compact layout versus the plain arrays, the memory of both is printed during the setup
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class CompactBenchmark
+{
+    private AhoCorasickDoubleArrayTrie<String> compactAlphabet;
+    private CompactAhoCorasickDoubleArrayTrie<String> compact;
+    private final HitBuffer hits = new HitBuffer();
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        compactAlphabet = new AhoCorasickDoubleArrayTrie<String>();
+        compactAlphabet.build(corpus.dictionary, new BuildOptions().setCompactAlphabet(true));
+        compact = new CompactAhoCorasickDoubleArrayTrie<String>();
+        compact.build(compactAlphabet);
+        System.out.printf("%n%s: arrays %d bytes, compact alphabet %d bytes, compact layout %d bytes%n", corpus.language,
+                          corpus.acdat.binarySize(), compactAlphabet.binarySize(), compact.memorySize());
+    }
+
+    @Benchmark
+    public int arrays(Corpus corpus)
+    {
+        hits.clear();
+        corpus.acdat.parseText(corpus.text, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int arraysCompactAlphabet(Corpus corpus)
+    {
+        hits.clear();
+        compactAlphabet.parseText(corpus.text, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int compactLayout(Corpus corpus)
+    {
+        hits.clear();
+        compact.parseText(corpus.text, hits);
+        return hits.size();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The bundled dictionaries and texts, shared by all benchmarks
+ *
+ * @author hankcs
+ */
+@State(Scope.Benchmark)
+public class Corpus
+{
+    /**
+     * en or cn, the directory under src/test/resources
+     */
+    @Param({"en", "cn"})
+    public String language;
+
+    /**
+     * the dictionary, every word maps to itself
+     */
+    public TreeMap<String, String> dictionary;
+    /**
+     * the whole text
+     */
+    public String text;
+    /**
+     * the whole text as a char array
+     */
+    public char[] textChars;
+    /**
+     * the text split into lines, used by the short-circuit methods such as matches and findFirst
+     */
+    public String[] lines;
+    /**
+     * the keys of the dictionary
+     */
+    public String[] keys;
+    /**
+     * an automaton built from the dictionary
+     */
+    public AhoCorasickDoubleArrayTrie<String> acdat;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        dictionary = new TreeMap<String, String>();
+        for (String word : loadLines(language + "/dictionary.txt"))
+        {
+            dictionary.put(word, word);
+        }
+        List<String> lineList = loadLines(language + "/text.txt");
+        StringBuilder sbText = new StringBuilder();
+        for (String line : lineList)
+        {
+            sbText.append(line).append('\n');
+        }
+        text = sbText.toString();
+        textChars = text.toCharArray();
+        lines = lineList.toArray(new String[0]);
+        keys = dictionary.keySet().toArray(new String[0]);
+        acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(dictionary);
+    }
+
+    static List<String> loadLines(String path) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(Corpus.class.getClassLoader().getResourceAsStream(path), "UTF-8"));
+        String line;
+        while ((line = br.readLine()) != null)
+        {
+            lines.add(line);
+        }
+        br.close();
+        return lines;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.BuildOptions;
+import com.hankcs.algorithm.HitBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build time versus scan time for several density thresholds, the build report of each is printed during the setup
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class DensityBenchmark
+{
+    @Param({"0.95", "0.8", "0.5"})
+    public double densityThreshold;
+
+    private String[] values;
+    private BuildOptions options;
+    private AhoCorasickDoubleArrayTrie<String> acdat;
+    private final HitBuffer hits = new HitBuffer();
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        values = corpus.dictionary.values().toArray(new String[0]);
+        options = new BuildOptions().setDensityThreshold(densityThreshold);
+        acdat = build(corpus);
+        System.out.printf("%n%s %s: %s%n", corpus.language, densityThreshold, acdat.getBuildReport());
+    }
+
+    @Benchmark
+    public AhoCorasickDoubleArrayTrie<String> build(Corpus corpus)
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(corpus.keys, values, options);
+        return acdat;
+    }
+
+    @Benchmark
+    public int parseText(Corpus corpus)
+    {
+        hits.clear();
+        acdat.parseText(corpus.text, hits);
+        return hits.size();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.BuildOptions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning with the DFA table of different depths, 0 is the plain automaton following failure links.<br>
+ * The en dictionary is small enough for a full DFA: -p language=en -p dfaDepth=2147483647
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class DfaBenchmark
+{
+    @Param({"0", "1", "2"})
+    public int dfaDepth;
+
+    private AhoCorasickDoubleArrayTrie<String> acdat;
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(corpus.dictionary, new BuildOptions().setDfaDepth(dfaDepth));
+    }
+
+    @Benchmark
+    public void parseTextCharArray(Corpus corpus, final Blackhole blackhole)
+    {
+        acdat.parseText(corpus.textChars, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                blackhole.consume(value);
+            }
+        });
+    }
+}
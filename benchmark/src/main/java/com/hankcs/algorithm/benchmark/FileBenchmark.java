@@ -0,0 +1,116 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning a UTF-8 file by reading it into a String versus memory mapping it, run with -prof gc to see the heap copies
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class FileBenchmark
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File file;
+    private ExecutorService executor;
+    private final CountHits counter = new CountHits();
+
+    @Setup
+    public void setup(Corpus corpus) throws IOException
+    {
+        file = File.createTempFile("acdat", ".txt");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(corpus.text.getBytes(UTF_8));
+        out.close();
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        executor.shutdown();
+        file.delete();
+    }
+
+    @Benchmark
+    public int readThenParse(Corpus corpus) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        byte[] bytes = new byte[(int) raf.length()];
+        raf.readFully(bytes);
+        raf.close();
+        counter.count = 0;
+        corpus.acdat.parseText(new String(bytes, UTF_8), counter);
+        return counter.count;
+    }
+
+    @Benchmark
+    public int parseFile(Corpus corpus) throws IOException
+    {
+        counter.count = 0;
+        corpus.acdat.parseFile(file, UTF_8, counter);
+        return counter.count;
+    }
+
+    @Benchmark
+    public int parseFileInRegions(Corpus corpus) throws IOException
+    {
+        counter.count = 0;
+        corpus.acdat.parseFile(file, UTF_8, 1 << 20, executor, counter);
+        return counter.count;
+    }
+
+    private static class CountHits implements AhoCorasickDoubleArrayTrie.IHit<String>, AhoCorasickDoubleArrayTrie.IHitLong<String>
+    {
+        int count;
+
+        @Override
+        public void hit(int begin, int end, String value)
+        {
+            ++count;
+        }
+
+        @Override
+        public void hit(long begin, long end, String value)
+        {
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.HitBuffer;
+import com.hankcs.algorithm.MatchMode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leftmost-longest tokenization computed while scanning versus collecting all the overlapping hits then selecting
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class MatchModeBenchmark
+{
+    @Param({"ALL", "LEFTMOST_LONGEST", "LEFTMOST_FIRST", "NON_OVERLAPPING"})
+    public MatchMode mode;
+
+    private final HitBuffer hits = new HitBuffer();
+
+    @Benchmark
+    public int scan(Corpus corpus)
+    {
+        hits.clear();
+        corpus.acdat.parseText(corpus.text, mode, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public List<AhoCorasickDoubleArrayTrie.Hit<String>> postProcessLeftmostLongest(Corpus corpus)
+    {
+        List<AhoCorasickDoubleArrayTrie.Hit<String>> all = corpus.acdat.parseText(corpus.text);
+        Collections.sort(all, new Comparator<AhoCorasickDoubleArrayTrie.Hit<String>>()
+        {
+            @Override
+            public int compare(AhoCorasickDoubleArrayTrie.Hit<String> o1, AhoCorasickDoubleArrayTrie.Hit<String> o2)
+            {
+                if (o1.begin != o2.begin) return o1.begin < o2.begin ? -1 : 1;
+                return o2.end - o1.end;
+            }
+        });
+        List<AhoCorasickDoubleArrayTrie.Hit<String>> selected = new ArrayList<AhoCorasickDoubleArrayTrie.Hit<String>>();
+        int position = 0;
+        for (AhoCorasickDoubleArrayTrie.Hit<String> hit : all)
+        {
+            if (hit.begin < position) continue;
+            selected.add(hit);
+            position = hit.end;
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.HitBuffer;
+import com.hankcs.algorithm.MultiTenantAhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the key masks of a shared automaton: scanning the union unfiltered, scanning for a tenant owning every
+ * key, scanning for a tenant owning one key in {@code share}, and scanning a dedicated automaton of that tenant
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class MultiTenantBenchmark
+{
+    /**
+     * a tenant owns one key in share keys of the union
+     */
+    @Param({"2", "10"})
+    public int share;
+
+    private MultiTenantAhoCorasickDoubleArrayTrie<String> multiTenant;
+    private AhoCorasickDoubleArrayTrie<String> dedicated;
+    private int everyKey, someKeys;
+    private final HitBuffer hits = new HitBuffer();
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        multiTenant = new MultiTenantAhoCorasickDoubleArrayTrie<String>();
+        multiTenant.build(corpus.dictionary);
+        everyKey = multiTenant.addTenant(corpus.dictionary.keySet());
+        List<String> keys = new ArrayList<String>();
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (int i = 0; i < corpus.keys.length; i += share)
+        {
+            keys.add(corpus.keys[i]);
+            map.put(corpus.keys[i], corpus.keys[i]);
+        }
+        someKeys = multiTenant.addTenant(keys);
+        dedicated = new AhoCorasickDoubleArrayTrie<String>();
+        dedicated.build(map);
+    }
+
+    @Benchmark
+    public int union(Corpus corpus)
+    {
+        hits.clear();
+        multiTenant.getTrie().parseText(corpus.text, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int tenantOwningEveryKey(Corpus corpus)
+    {
+        hits.clear();
+        multiTenant.parseText(everyKey, corpus.text, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int tenantOwningSomeKeys(Corpus corpus)
+    {
+        hits.clear();
+        multiTenant.parseText(someKeys, corpus.text, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int dedicatedAutomaton(Corpus corpus)
+    {
+        hits.clear();
+        dedicated.parseText(corpus.text, hits);
+        return hits.size();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.MappedAhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan throughput of the on-heap arrays versus the same automaton copied into a direct buffer
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class OffHeapBenchmark
+{
+    private MappedAhoCorasickDoubleArrayTrie<String> offHeap;
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        offHeap = MappedAhoCorasickDoubleArrayTrie.offHeap(corpus.acdat);
+    }
+
+    @Benchmark
+    public int onHeap(Corpus corpus)
+    {
+        Counter counter = new Counter();
+        corpus.acdat.parseText(corpus.textChars, counter);
+        return counter.count;
+    }
+
+    @Benchmark
+    public int offHeap(Corpus corpus)
+    {
+        Counter counter = new Counter();
+        offHeap.parseText(corpus.textChars, counter);
+        return counter.count;
+    }
+
+    private static class Counter implements AhoCorasickDoubleArrayTrie.IHit<String>
+    {
+        int count;
+
+        @Override
+        public void hit(int begin, int end, String value)
+        {
+            ++count;
+        }
+    }
+}
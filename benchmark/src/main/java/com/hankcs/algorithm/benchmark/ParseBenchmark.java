@@ -0,0 +1,93 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning throughput of the automaton, run with {@code -prof gc} to see the allocation rate
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class ParseBenchmark
+{
+    @Benchmark
+    public List<AhoCorasickDoubleArrayTrie.Hit<String>> parseTextCharSequence(Corpus corpus)
+    {
+        return corpus.acdat.parseText(corpus.text);
+    }
+
+    @Benchmark
+    public void parseTextCharArray(Corpus corpus, final Blackhole blackhole)
+    {
+        corpus.acdat.parseText(corpus.textChars, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                blackhole.consume(begin);
+                blackhole.consume(end);
+                blackhole.consume(value);
+            }
+        });
+    }
+
+    @Benchmark
+    public int matches(Corpus corpus)
+    {
+        int matched = 0;
+        for (String line : corpus.lines)
+        {
+            if (corpus.acdat.matches(line)) ++matched;
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public void findFirst(Corpus corpus, Blackhole blackhole)
+    {
+        for (String line : corpus.lines)
+        {
+            blackhole.consume(corpus.acdat.findFirst(line));
+        }
+    }
+
+    @Benchmark
+    public int exactMatchSearch(Corpus corpus)
+    {
+        int sum = 0;
+        for (String key : corpus.keys)
+        {
+            sum += corpus.acdat.exactMatchSearch(key);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.HitBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning with the build order of the double array versus a layout guided by a profile of half of the text
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class RelayoutBenchmark
+{
+    private AhoCorasickDoubleArrayTrie<String> relaidOut;
+    private final HitBuffer hits = new HitBuffer();
+
+    @Setup
+    public void setup(Corpus corpus)
+    {
+        relaidOut = new AhoCorasickDoubleArrayTrie<String>();
+        relaidOut.build(corpus.dictionary);
+        relaidOut.relayout(corpus.text.substring(0, corpus.text.length() / 2));
+    }
+
+    @Benchmark
+    public int buildOrder(Corpus corpus)
+    {
+        hits.clear();
+        corpus.acdat.parseText(corpus.text, hits);
+        return hits.size();
+    }
+
+    @Benchmark
+    public int profiled(Corpus corpus)
+    {
+        hits.clear();
+        relaidOut.parseText(corpus.text, hits);
+        return hits.size();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.MappedAhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of persisting an automaton and restoring it, measured in memory to exclude the disk
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class SaveLoadBenchmark
+{
+    private byte[] saved;
+    private File binary;
+
+    @Setup
+    public void setup(Corpus corpus) throws IOException
+    {
+        saved = save(corpus);
+        binary = File.createTempFile("acdat", ".bin");
+        binary.deleteOnExit();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(binary));
+        corpus.acdat.saveBinary(out);
+        out.close();
+    }
+
+    @Benchmark
+    public byte[] save(Corpus corpus) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        corpus.acdat.save(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public AhoCorasickDoubleArrayTrie<String> load() throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(saved));
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.load(in);
+        in.close();
+        return acdat;
+    }
+
+    @Benchmark
+    public byte[] saveBinary(Corpus corpus) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        corpus.acdat.saveBinary(bytes);
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public MappedAhoCorasickDoubleArrayTrie<String> openBinary() throws IOException
+    {
+        return MappedAhoCorasickDoubleArrayTrie.open(binary, null);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm.benchmark;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.BuildOptions;
+import com.hankcs.algorithm.Utf8AhoCorasickDoubleArrayTrie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning UTF-8 bytes directly versus decoding them to a String first
+ *
+ * @author hankcs
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class Utf8Benchmark
+{
+    private Utf8AhoCorasickDoubleArrayTrie<String> utf8;
+    private byte[] bytes;
+
+    @Setup
+    public void setup(Corpus corpus) throws UnsupportedEncodingException
+    {
+        utf8 = new Utf8AhoCorasickDoubleArrayTrie<String>();
+        utf8.build(corpus.dictionary, new BuildOptions().setCompactAlphabet(true));
+        bytes = corpus.text.getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public void decodeThenParseText(Corpus corpus, final Blackhole blackhole) throws UnsupportedEncodingException
+    {
+        corpus.acdat.parseText(new String(bytes, "UTF-8"), new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                blackhole.consume(value);
+            }
+        });
+    }
+
+    @Benchmark
+    public void parseBytes(final Blackhole blackhole)
+    {
+        utf8.parseText(bytes, 0, bytes.length, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                blackhole.consume(value);
+            }
+        });
+    }
+}
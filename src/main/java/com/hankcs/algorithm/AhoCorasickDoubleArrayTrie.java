@@ -20,11 +20,16 @@
 
 package com.hankcs.algorithm;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * An implementation of Aho Corasick algorithm based on Double Array Trie
@@ -46,9 +51,14 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
      */
     protected int[] fail;
     /**
-     * output table of the Aho Corasick automata
+     * output table of the Aho Corasick automata, the outputs of state s are
+     * outputIds[outputOffsets[s] ... outputOffsets[s + 1])
      */
-    protected int[][] output;
+    protected int[] outputOffsets;
+    /**
+     * the key indexes of all outputs, grouped by state
+     */
+    protected int[] outputIds;
     /**
      * outer value array
      */
@@ -64,6 +74,38 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
      */
     protected int size;
 
+    /**
+     * the code of every character in the compacted alphabet, 0 for the characters not appearing in any key,
+     * null if the raw characters are used as codes. If the keys are folded, e.g. to ignore case, the code of a
+     * character is the code of its folded form.
+     */
+    protected char[] alphabet;
+
+    /**
+     * the offset of the DFA row of a state in {@link #dfa}, -1 if the state has no row
+     */
+    protected int[] dfaRow;
+    /**
+     * rows of precomputed transitions, dfa[dfaRow[state] + dfaClass[c]] is the next state
+     */
+    protected int[] dfa;
+    /**
+     * the column of every character in a DFA row, 0 for the characters not appearing in any key
+     */
+    protected char[] dfaClass;
+    /**
+     * the largest length of keys, 0 if not computed yet
+     */
+    private transient int maxLength;
+    /**
+     * the depth of every state, null if not computed yet
+     */
+    private transient volatile int[] depth;
+    /**
+     * the statistics of the last build, null if loaded
+     */
+    private transient BuildReport buildReport;
+
     /**
      * Parse text
      *
@@ -98,13 +140,10 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
         for (int i = 0; i < text.length(); ++i)
         {
             currentState = getState(currentState, text.charAt(i));
-            int[] hitArray = output[currentState];
-            if (hitArray != null)
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
             {
-                for (int hit : hitArray)
-                {
-                    processor.hit(position - l[hit], position, v[hit]);
-                }
+                int hit = outputIds[o];
+                processor.hit(position - l[hit], position, v[hit]);
             }
             ++position;
         }
@@ -123,21 +162,104 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
         {
             final int position = i + 1;
             currentState = getState(currentState, text.charAt(i));
-            int[] hitArray = output[currentState];
-            if (hitArray != null)
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
             {
-                for (int hit : hitArray)
+                int hit = outputIds[o];
+                boolean proceed = processor.hit(position - l[hit], position, v[hit]);
+                if (!proceed)
                 {
-                    boolean proceed = processor.hit(position - l[hit], position, v[hit]);
-                    if (!proceed)
-                    {
-                        return;
-                    }
+                    return;
                 }
             }
         }
     }
 
+    /**
+     * Parse text into a reusable buffer, allocating nothing unless the buffer has to grow
+     *
+     * @param text The text
+     * @param hits the buffer to append the hits to, it is not cleared
+     */
+    public void parseText(CharSequence text, HitBuffer hits)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+            {
+                int hit = outputIds[o];
+                hits.add(i + 1 - l[hit], i + 1, hit);
+            }
+        }
+    }
+
+    /**
+     * Parse text into a reusable buffer, allocating nothing unless the buffer has to grow
+     *
+     * @param text The text
+     * @param hits the buffer to append the hits to, it is not cleared
+     */
+    public void parseText(char[] text, HitBuffer hits)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length; ++i)
+        {
+            currentState = getState(currentState, text[i]);
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+            {
+                int hit = outputIds[o];
+                hits.add(i + 1 - l[hit], i + 1, hit);
+            }
+        }
+    }
+
+    /**
+     * Parse text, keeping the keys in a mask only. The masked scans live here rather than in
+     * {@link MultiTenantAhoCorasickDoubleArrayTrie}, where reading the arrays through another object was about 50%
+     * slower
+     *
+     * @param text      The text
+     * @param mask      bit i is set if key i is kept
+     * @param processor A processor which handles the output
+     */
+    void parseText(CharSequence text, long[] mask, IHit<V> processor)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+            {
+                int hit = outputIds[o];
+                if ((mask[hit >>> 6] & (1L << hit)) == 0) continue;
+                processor.hit(i + 1 - l[hit], i + 1, v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Parse text into a reusable buffer, keeping the keys in a mask only
+     *
+     * @param text The text
+     * @param mask bit i is set if key i is kept
+     * @param hits the buffer to append the hits to, it is not cleared
+     */
+    void parseText(CharSequence text, long[] mask, HitBuffer hits)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+            {
+                int hit = outputIds[o];
+                if ((mask[hit >>> 6] & (1L << hit)) == 0) continue;
+                hits.add(i + 1 - l[hit], i + 1, hit);
+            }
+        }
+    }
+
     /**
      * Parse text
      *
@@ -151,13 +273,10 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
         for (char c : text)
         {
             currentState = getState(currentState, c);
-            int[] hitArray = output[currentState];
-            if (hitArray != null)
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
             {
-                for (int hit : hitArray)
-                {
-                    processor.hit(position - l[hit], position, v[hit]);
-                }
+                int hit = outputIds[o];
+                processor.hit(position - l[hit], position, v[hit]);
             }
             ++position;
         }
@@ -176,13 +295,10 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
         for (char c : text)
         {
             currentState = getState(currentState, c);
-            int[] hitArray = output[currentState];
-            if (hitArray != null)
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
             {
-                for (int hit : hitArray)
-                {
-                    processor.hit(position - l[hit], position, v[hit], hit);
-                }
+                int hit = outputIds[o];
+                processor.hit(position - l[hit], position, v[hit], hit);
             }
             ++position;
         }
@@ -200,8 +316,7 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
         for (int i = 0; i < text.length(); ++i)
         {
             currentState = getState(currentState, text.charAt(i));
-            int[] hitArray = output[currentState];
-            if (hitArray != null)
+            if (outputOffsets[currentState] != outputOffsets[currentState + 1])
             {
                 return true;
             }
@@ -210,202 +325,1008 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
     }
 
     /**
-     * Search first match in string
+     * Checks that string contains at least one key in a mask
      *
      * @param text source text to check
-     * @return first match or {@code null} if there are no matches
+     * @param mask bit i is set if key i is kept
+     * @return {@code true} if string contains at least one key in the mask
      */
-    public Hit<V> findFirst(CharSequence text)
+    boolean matches(CharSequence text, long[] mask)
     {
-        int position = 1;
         int currentState = 0;
         for (int i = 0; i < text.length(); ++i)
         {
             currentState = getState(currentState, text.charAt(i));
-            int[] hitArray = output[currentState];
-            if (hitArray != null)
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
             {
-                int hitIndex = hitArray[0];
-                return new Hit<V>(position - l[hitIndex], position, v[hitIndex]);
+                int hit = outputIds[o];
+                if ((mask[hit >>> 6] & (1L << hit)) != 0) return true;
             }
-            ++position;
         }
-        return null;
+        return false;
     }
 
-
     /**
-     * Save
+     * Parse many short documents in one call, without creating any Hit or list
      *
-     * @param out An ObjectOutputStream object
-     * @throws IOException Some IOException
+     * @param docs      the documents
+     * @param processor A processor which handles the output, called document by document in order
      */
-    public void save(ObjectOutputStream out) throws IOException
+    public void parseBatch(CharSequence[] docs, IHitBatch<V> processor)
     {
-        out.writeObject(base);
-        out.writeObject(check);
-        out.writeObject(fail);
-        out.writeObject(output);
-        out.writeObject(l);
-        out.writeObject(v);
+        for (int d = 0; d < docs.length; ++d)
+        {
+            CharSequence text = docs[d];
+            int currentState = 0;
+            for (int i = 0; i < text.length(); ++i)
+            {
+                currentState = getState(currentState, text.charAt(i));
+                for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+                {
+                    int hit = outputIds[o];
+                    processor.hit(d, i + 1 - l[hit], i + 1, v[hit]);
+                }
+            }
+        }
     }
 
     /**
-     * Load data from [ObjectInputStream]
+     * Check many short documents in one call, without creating anything but the result
      *
-     * @param in An ObjectInputStream object
-     * @throws IOException            If can't read the file from path
-     * @throws ClassNotFoundException If the class doesn't exist or matched
+     * @param docs the documents
+     * @return the indexes of the documents containing at least one keyword
      */
-    public void load(ObjectInputStream in) throws IOException, ClassNotFoundException
+    public BitSet matchesBatch(CharSequence[] docs)
     {
-        base = (int[]) in.readObject();
-        check = (int[]) in.readObject();
-        fail = (int[]) in.readObject();
-        output = (int[][]) in.readObject();
-        l = (int[]) in.readObject();
-        v = (V[]) in.readObject();
+        BitSet matched = new BitSet(docs.length);
+        int[] outputOffsets = this.outputOffsets;
+        for (int d = 0; d < docs.length; ++d)
+        {
+            CharSequence text = docs[d];
+            int currentState = 0;
+            for (int i = 0; i < text.length(); ++i)
+            {
+                currentState = getState(currentState, text.charAt(i));
+                if (outputOffsets[currentState] != outputOffsets[currentState + 1])
+                {
+                    matched.set(d);
+                    break;
+                }
+            }
+        }
+        return matched;
     }
 
     /**
-     * Get value by a String key, just like a map.get() method
+     * Search first match in string
      *
-     * @param key The key
-     * @return value if exist otherwise it return null
+     * @param text source text to check
+     * @return first match or {@code null} if there are no matches
      */
-    public V get(CharSequence key)
+    public Hit<V> findFirst(CharSequence text)
     {
-        int index = exactMatchSearch(key);
-        if (index >= 0)
+        int position = 1;
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
         {
-            return v[index];
+            currentState = getState(currentState, text.charAt(i));
+            int o = outputOffsets[currentState];
+            if (o != outputOffsets[currentState + 1])
+            {
+                int hitIndex = outputIds[o];
+                return new Hit<V>(position - l[hitIndex], position, v[hitIndex]);
+            }
+            ++position;
         }
-
         return null;
     }
 
     /**
-     * Update a value corresponding to a key
+     * Parse text in parallel, the hits are the same and in the same order as {@link #parseText(CharSequence)}
      *
-     * @param key   the key
-     * @param value the value
-     * @return successful or not（failure if there is no key）
+     * @param text     The text, must be safe to read from several threads, e.g. a String
+     * @param executor runs the chunks of the text, e.g. a ForkJoinPool
+     * @return a list of outputs
+     * @see #parseText(CharSequence, int, ExecutorService, IHit)
      */
-    public boolean set(CharSequence key, V value)
+    public List<Hit<V>> parseText(CharSequence text, ExecutorService executor)
     {
-        int index = exactMatchSearch(key);
-        if (index >= 0)
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(text, PARALLEL_CHUNK_SIZE, executor, new IHit<V>()
         {
-            v[index] = value;
-            return true;
-        }
-
-        return false;
+            @Override
+            public void hit(int begin, int end, V value)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
     }
 
     /**
-     * Pick the value by index in value array <br>
-     * Notice that to be more efficiently, this method DO NOT check the parameter
+     * Parse text in parallel. The text is split into chunks, each chunk is scanned from the largest key length - 1
+     * chars before its beginning, so that the matches crossing the seams are found, and keeps only the hits ending
+     * inside it. The processor is called in the calling thread, with the same hits in the same order as
+     * {@link #parseText(CharSequence, IHit)}.
      *
-     * @param index The index
-     * @return The value
+     * @param text      The text, must be safe to read from several threads, e.g. a String
+     * @param chunkSize the length of every chunk
+     * @param executor  runs the chunks, e.g. a ForkJoinPool
+     * @param processor A processor which handles the output
      */
-    public V get(int index)
+    public void parseText(final CharSequence text, int chunkSize, ExecutorService executor, IHit<V> processor)
     {
-        return v[index];
+        if (chunkSize <= 0) throw new IllegalArgumentException("Illegal chunk size " + chunkSize);
+        final int overlap = Math.max(0, maxKeyLength() - 1);
+        List<Future<ChunkHits>> futures = new ArrayList<Future<ChunkHits>>();
+        for (int begin = 0; begin < text.length(); begin += chunkSize)
+        {
+            final int from = begin, to = (int) Math.min(text.length(), (long) begin + chunkSize);
+            futures.add(executor.submit(new Callable<ChunkHits>()
+            {
+                @Override
+                public ChunkHits call()
+                {
+                    return parseChunk(text, Math.max(0, from - overlap), from, to);
+                }
+            }));
+        }
+        try
+        {
+            // 按顺序合并各块的结果，每块处理完即可释放
+            for (int i = 0; i < futures.size(); ++i)
+            {
+                ChunkHits hits = await(futures.get(i));
+                futures.set(i, null);
+                for (int j = 0; j < hits.size; ++j)
+                {
+                    int end = hits.ends[j], hit = hits.ids[j];
+                    processor.hit(end - l[hit], end, v[hit]);
+                }
+            }
+        }
+        finally
+        {
+            for (Future<ChunkHits> future : futures)
+            {
+                if (future != null) future.cancel(true);
+            }
+        }
     }
 
     /**
-     * Processor handles the output when hit a keyword
+     * Parse a file through memory mappings, without reading it into a String. UTF-8, US-ASCII and ISO-8859-1 are
+     * decoded inline from the mapped bytes, other charsets through a {@link java.nio.charset.CharsetDecoder}, one char
+     * at a time. Malformed bytes are replaced by U+FFFD, a byte at a time on the inline path.<br>
+     * The offsets of the hits are byte positions in the file: a hit covers the bytes [begin, end). The two chars of a
+     * supplementary character both span its whole byte sequence.
+     *
+     * @param file      the file
+     * @param charset   the charset of the file
+     * @param processor A processor which handles the output, in the order of the file
+     * @throws IOException if the file can't be read
      */
-    public interface IHit<V>
+    public void parseFile(File file, Charset charset, IHitLong<V> processor) throws IOException
     {
-        /**
-         * Hit a keyword, you can use some code like text.substring(begin, end) to get the keyword
-         *
-         * @param begin the beginning index, inclusive.
-         * @param end   the ending index, exclusive.
-         * @param value the value assigned to the keyword
-         */
-        void hit(int begin, int end, V value);
+        FileParser.parse(this, file, charset, processor);
     }
 
     /**
-     * Processor handles the output when hit a keyword, with more detail
+     * Parse a file by regions in parallel, the hits are the same and in the same order as
+     * {@link #parseFile(File, Charset, IHitLong)}
+     *
+     * @param file      the file
+     * @param charset   the charset of the file
+     * @param executor  runs the regions of the file, e.g. a ForkJoinPool
+     * @param processor A processor which handles the output, in the order of the file
+     * @throws IOException if the file can't be read
+     * @see #parseFile(File, Charset, long, ExecutorService, IHitLong)
      */
-    public interface IHitFull<V>
+    public void parseFile(File file, Charset charset, ExecutorService executor, IHitLong<V> processor) throws IOException
     {
-        /**
-         * Hit a keyword, you can use some code like text.substring(begin, end) to get the keyword
-         *
-         * @param begin the beginning index, inclusive.
-         * @param end   the ending index, exclusive.
-         * @param value the value assigned to the keyword
-         * @param index the index of the value assigned to the keyword, you can use the integer as a perfect hash value
-         */
-        void hit(int begin, int end, V value, int index);
+        FileParser.parse(this, file, charset, FileParser.REGION_SIZE, executor, processor);
     }
 
     /**
-     * Callback that allows to cancel the search process.
+     * Parse a file by regions in parallel. Like {@link #parseText(CharSequence, int, ExecutorService, IHit)}, every
+     * region is scanned from enough bytes before its beginning to find the matches crossing the seams, and keeps only
+     * the hits ending inside it. The processor is called in the calling thread, with the same hits in the same order as
+     * {@link #parseFile(File, Charset, IHitLong)}. Only UTF-8, US-ASCII and ISO-8859-1 can be split into regions, a
+     * file in other charsets is scanned in the calling thread.
+     *
+     * @param file       the file
+     * @param charset    the charset of the file
+     * @param regionSize the bytes of every region, moved forward to the beginning of a char
+     * @param executor   runs the regions of the file, e.g. a ForkJoinPool
+     * @param processor  A processor which handles the output, in the order of the file
+     * @throws IOException if the file can't be read
      */
-    public interface IHitCancellable<V>
+    public void parseFile(File file, Charset charset, long regionSize, ExecutorService executor, IHitLong<V> processor) throws IOException
     {
-        /**
-         * Hit a keyword, you can use some code like text.substring(begin, end) to get the keyword
-         *
-         * @param begin the beginning index, inclusive.
-         * @param end   the ending index, exclusive.
-         * @param value the value assigned to the keyword
-         * @return Return true for continuing the search and false for stopping it.
-         */
-        boolean hit(int begin, int end, V value);
+        FileParser.parse(this, file, charset, regionSize, executor, processor);
     }
 
     /**
-     * A result output
-     *
-     * @param <V> the value type
+     * @return the largest length of keys
      */
-    public static class Hit<V>
+    int maxKeyLength()
     {
-        /**
-         * the beginning index, inclusive.
-         */
-        public final int begin;
-        /**
-         * the ending index, exclusive.
-         */
-        public final int end;
-        /**
-         * the value assigned to the keyword
-         */
-        public final V value;
-
-        public Hit(int begin, int end, V value)
+        if (maxLength == 0)
         {
-            this.begin = begin;
-            this.end = end;
-            this.value = value;
+            int max = 0;
+            for (int length : l)
+            {
+                max = Math.max(max, length);
+            }
+            maxLength = max;
         }
+        return maxLength;
+    }
 
-        @Override
-        public String toString()
+    /**
+     * Parse text and keep only the matches selected by a mode
+     *
+     * @param text The text
+     * @param mode how to select non-overlapping matches
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text, MatchMode mode)
+    {
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(text, mode, new IHitFull<V>()
         {
-            return String.format("[%d:%d]=%s", begin, end, value);
-        }
+            @Override
+            public void hit(int begin, int end, V value, int index)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
     }
 
     /**
-     * transmit state, supports failure function
+     * Parse text into a reusable buffer and keep only the matches selected by a mode
      *
-     * @param currentState
-     * @param character
-     * @return
+     * @param text The text
+     * @param mode how to select non-overlapping matches
+     * @param hits the buffer to append the hits to, it is not cleared
      */
-    private int getState(int currentState, char character)
+    public void parseText(CharSequence text, MatchMode mode, final HitBuffer hits)
     {
-        int newCurrentState = transitionWithRoot(currentState, character);  // 先按success跳转
+        parseText(text, mode, new IHitFull<V>()
+        {
+            @Override
+            public void hit(int begin, int end, V value, int index)
+            {
+                hits.add(begin, end, index);
+            }
+        });
+    }
+
+    /**
+     * Parse text and keep only the matches selected by a mode, which are computed while scanning without collecting
+     * the overlapping ones.<br>
+     * The leftmost modes keep the few candidates found since the last output and commit the leftmost one as soon as no
+     * later match can begin at or before it, which is known from the depth of the current state. The depths of states
+     * are computed on first use and take one int per slot of the double array.
+     *
+     * @param text      The text
+     * @param mode      how to select non-overlapping matches
+     * @param processor A processor which handles the output, in the order of the text
+     */
+    public void parseText(CharSequence text, MatchMode mode, IHitFull<V> processor)
+    {
+        if (mode == MatchMode.ALL)
+        {
+            int currentState = 0;
+            for (int i = 0; i < text.length(); ++i)
+            {
+                currentState = getState(currentState, text.charAt(i));
+                for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+                {
+                    int hit = outputIds[o];
+                    processor.hit(i + 1 - l[hit], i + 1, v[hit], hit);
+                }
+            }
+        }
+        else if (mode == MatchMode.NON_OVERLAPPING)
+        {
+            int currentState = 0;
+            for (int i = 0; i < text.length(); ++i)
+            {
+                currentState = getState(currentState, text.charAt(i));
+                int o = outputOffsets[currentState], end = outputOffsets[currentState + 1];
+                if (o == end) continue;
+                int longest = outputIds[o];
+                for (++o; o < end; ++o)
+                {
+                    if (l[outputIds[o]] > l[longest]) longest = outputIds[o];
+                }
+                processor.hit(i + 1 - l[longest], i + 1, v[longest], longest);
+                currentState = 0;
+            }
+        }
+        else
+        {
+            boolean longest = mode == MatchMode.LEFTMOST_LONGEST;
+            int[] depth = stateDepth();
+            // 尚未确定的候选，都始于已输出的匹配之后
+            int[] pending = new int[3 * 16];
+            int pendingSize = 0;
+            int minBegin = Integer.MAX_VALUE; // 候选中最左的起点
+            int committed = 0;
+            int currentState = 0;
+            for (int i = 0; i <= text.length(); ++i)
+            {
+                int horizon;
+                if (i < text.length())
+                {
+                    currentState = getState(currentState, text.charAt(i));
+                    int e = i + 1;
+                    for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+                    {
+                        int hit = outputIds[o];
+                        int b = e - l[hit];
+                        if (b < committed) continue;
+                        if (pendingSize == pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+                        pending[pendingSize++] = b;
+                        pending[pendingSize++] = e;
+                        pending[pendingSize++] = hit;
+                        minBegin = Math.min(minBegin, b);
+                    }
+                    if (pendingSize == 0) continue;
+                    // 以后的匹配都始于horizon或更右
+                    horizon = e - depth[currentState];
+                }
+                else
+                {
+                    horizon = Integer.MAX_VALUE;
+                }
+                while (minBegin < horizon)
+                {
+                    int best = 0;
+                    for (int k = 3; k < pendingSize; k += 3)
+                    {
+                        if (pending[k] < pending[best] || (pending[k] == pending[best] &&
+                                (longest ? pending[k + 1] > pending[best + 1] : pending[k + 2] < pending[best + 2])))
+                            best = k;
+                    }
+                    int hit = pending[best + 2];
+                    processor.hit(pending[best], pending[best + 1], v[hit], hit);
+                    committed = pending[best + 1];
+                    int kept = 0;
+                    minBegin = Integer.MAX_VALUE;
+                    for (int k = 0; k < pendingSize; k += 3)
+                    {
+                        if (pending[k] < committed) continue;
+                        minBegin = Math.min(minBegin, pending[k]);
+                        pending[kept++] = pending[k];
+                        pending[kept++] = pending[k + 1];
+                        pending[kept++] = pending[k + 2];
+                    }
+                    pendingSize = kept;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the depth of every state, i.e. the length of the prefix it stands for, computed on first use
+     */
+    private int[] stateDepth()
+    {
+        if (depth != null) return depth;
+        // base的值互不相同，由子节点的check可以找到父节点
+        int[] owner = new int[base.length + 1];
+        Arrays.fill(owner, -1);
+        for (int s = 0; s < base.length; ++s)
+        {
+            if ((s == 0 || isState(s)) && base[s] > 0 && base[s] < owner.length) owner[base[s]] = s;
+        }
+        int[] depth = new int[base.length];
+        Arrays.fill(depth, -1);
+        depth[0] = 0;
+        int[] path = new int[64];
+        for (int s = 1; s < base.length; ++s)
+        {
+            if (depth[s] >= 0 || !isState(s)) continue;
+            int n = 0;
+            int p = s;
+            while (depth[p] < 0)
+            {
+                if (n == path.length) path = Arrays.copyOf(path, n * 2);
+                path[n++] = p;
+                p = owner[check[p]];
+            }
+            while (n > 0)
+            {
+                int child = path[--n];
+                depth[child] = depth[p] + 1;
+                p = child;
+            }
+        }
+        this.depth = depth;
+        return depth;
+    }
+
+    /**
+     * @return whether the position holds a state other than the root, rather than a terminal or nothing
+     */
+    private boolean isState(int p)
+    {
+        return p < check.length && check[p] > 0 && check[p] != p;
+    }
+
+    /**
+     * the default length of the chunks of {@link #parseText(CharSequence, ExecutorService)}
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 20;
+
+    /**
+     * scan text[from, to) and keep the hits ending in (begin, to]
+     */
+    private ChunkHits parseChunk(CharSequence text, int from, int begin, int to)
+    {
+        ChunkHits hits = new ChunkHits();
+        int currentState = 0;
+        for (int i = from; i < to; ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            if (i < begin) continue;
+            for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
+            {
+                hits.add(i + 1, outputIds[o]);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * The hits of a chunk, as ends and key indexes
+     */
+    private static class ChunkHits
+    {
+        int[] ends = new int[16];
+        int[] ids = new int[16];
+        int size;
+
+        void add(int end, int id)
+        {
+            if (size == ends.length)
+            {
+                ends = Arrays.copyOf(ends, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ends[size] = end;
+            ids[size] = id;
+            ++size;
+        }
+    }
+
+    /**
+     * wait for a future, rethrowing its failure unchecked
+     *
+     * @param future the future
+     * @param <T>    the type of the result
+     * @return the result
+     */
+    private static <T> T await(Future<T> future)
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting", e);
+        }
+    }
+
+
+    /**
+     * Save
+     *
+     * @param out An ObjectOutputStream object
+     * @throws IOException Some IOException
+     */
+    public void save(ObjectOutputStream out) throws IOException
+    {
+        if (alphabet != null)
+        {
+            out.writeObject(alphabet);
+        }
+        out.writeObject(base);
+        out.writeObject(check);
+        out.writeObject(fail);
+        out.writeObject(outputOffsets);
+        out.writeObject(outputIds);
+        out.writeObject(l);
+        out.writeObject(v);
+    }
+
+    /**
+     * Load data from [ObjectInputStream]
+     *
+     * @param in An ObjectInputStream object
+     * @throws IOException            If can't read the file from path
+     * @throws ClassNotFoundException If the class doesn't exist or matched
+     */
+    public void load(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        Object first = in.readObject();
+        if (first instanceof char[]) // only written if the alphabet was compacted
+        {
+            alphabet = (char[]) first;
+            base = (int[]) in.readObject();
+        }
+        else
+        {
+            alphabet = null;
+            base = (int[]) first;
+        }
+        check = (int[]) in.readObject();
+        fail = (int[]) in.readObject();
+        Object output = in.readObject();
+        if (output instanceof int[][]) // saved by versions before the output table was flattened
+        {
+            flattenOutput((int[][]) output);
+        }
+        else
+        {
+            outputOffsets = (int[]) output;
+            outputIds = (int[]) in.readObject();
+        }
+        l = (int[]) in.readObject();
+        v = (V[]) in.readObject();
+        maxLength = 0;
+        depth = null;
+        buildReport = null;
+        dfaRow = null;
+        dfa = null;
+        dfaClass = null;
+    }
+
+    /**
+     * flatten an output table of one int[] per state into outputOffsets and outputIds
+     *
+     * @param output the output table
+     */
+    private void flattenOutput(int[][] output)
+    {
+        outputOffsets = new int[output.length + 1];
+        for (int i = 0; i < output.length; ++i)
+        {
+            outputOffsets[i + 1] = outputOffsets[i] + (output[i] == null ? 0 : output[i].length);
+        }
+        outputIds = new int[outputOffsets[output.length]];
+        for (int i = 0; i < output.length; ++i)
+        {
+            if (output[i] != null)
+            {
+                System.arraycopy(output[i], 0, outputIds, outputOffsets[i], output[i].length);
+            }
+        }
+    }
+
+    /**
+     * Save the automaton in the flat binary layout, which can be memory-mapped by
+     * {@link MappedAhoCorasickDoubleArrayTrie#open(File, Object[])} without deserialization.<br>
+     * Values are arbitrary objects thus not included, keep them (in index order, see {@link #get(int)}) on your own.
+     *
+     * @param out An OutputStream object
+     * @throws IOException Some IOException
+     */
+    public void saveBinary(OutputStream out) throws IOException
+    {
+        int[][] sections = binarySections();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        writeInts(out, buffer, binaryHeader(sections));
+        for (int[] section : sections)
+        {
+            writeInts(out, buffer, section);
+        }
+        out.flush();
+    }
+
+    /**
+     * Save the automaton in the flat binary layout into a buffer, e.g. a direct one allocated with the size of
+     * {@link #binarySize()}.
+     *
+     * @param buffer the buffer, the layout is written from its position, which is advanced
+     * @throws java.nio.BufferOverflowException if the buffer doesn't have enough space
+     * @see #saveBinary(OutputStream)
+     */
+    public void saveBinary(ByteBuffer buffer)
+    {
+        int[][] sections = binarySections();
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.put(binaryHeader(sections));
+            for (int[] section : sections)
+            {
+                ints.put(section);
+            }
+            buffer.position(buffer.position() + ints.position() * 4);
+        }
+        finally
+        {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * @return the size of the flat binary layout in bytes
+     */
+    public long binarySize()
+    {
+        long size = 0;
+        for (int[] section : binarySections())
+        {
+            size += section.length;
+        }
+        return (3 + 7 * 2 + size) * 4;
+    }
+
+    /**
+     * @return the sections of the binary layout, see {@link MappedAhoCorasickDoubleArrayTrie}
+     */
+    private int[][] binarySections()
+    {
+        int[] packedAlphabet = new int[alphabet == null ? 0 : alphabet.length / 2];
+        for (int i = 0; i < packedAlphabet.length; ++i)
+        {
+            packedAlphabet[i] = alphabet[i * 2] | (alphabet[i * 2 + 1] << 16); // little endian char pairs
+        }
+        return new int[][]{base, check, fail, outputOffsets, outputIds, l, packedAlphabet};
+    }
+
+    /**
+     * @return the header of the binary layout holding the given sections
+     */
+    private static int[] binaryHeader(int[][] sections)
+    {
+        int[] header = new int[3 + sections.length * 2];
+        header[0] = MappedAhoCorasickDoubleArrayTrie.MAGIC;
+        header[1] = MappedAhoCorasickDoubleArrayTrie.VERSION;
+        header[2] = sections.length;
+        int offset = header.length;
+        for (int i = 0; i < sections.length; ++i)
+        {
+            header[3 + i * 2] = offset;
+            header[4 + i * 2] = sections[i].length;
+            offset += sections[i].length;
+        }
+        return header;
+    }
+
+    /**
+     * write an int array in little endian through a reusable buffer
+     */
+    private static void writeInts(OutputStream out, ByteBuffer buffer, int[] array) throws IOException
+    {
+        IntBuffer ints = buffer.asIntBuffer();
+        for (int i = 0; i < array.length; i += ints.capacity())
+        {
+            int length = Math.min(ints.capacity(), array.length - i);
+            ints.clear();
+            ints.put(array, i, length);
+            out.write(buffer.array(), 0, length * 4);
+        }
+    }
+
+    /**
+     * Get value by a String key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(CharSequence key)
+    {
+        int index = exactMatchSearch(key);
+        if (index >= 0)
+        {
+            return v[index];
+        }
+
+        return null;
+    }
+
+    /**
+     * Update a value corresponding to a key
+     *
+     * @param key   the key
+     * @param value the value
+     * @return successful or not（failure if there is no key）
+     */
+    public boolean set(CharSequence key, V value)
+    {
+        int index = exactMatchSearch(key);
+        if (index >= 0)
+        {
+            v[index] = value;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Pick the value by index in value array <br>
+     * Notice that to be more efficiently, this method DO NOT check the parameter
+     *
+     * @param index The index
+     * @return The value
+     */
+    public V get(int index)
+    {
+        return v[index];
+    }
+
+    /**
+     * Processor handles the output when hit a keyword
+     */
+    public interface IHit<V>
+    {
+        /**
+         * Hit a keyword, you can use some code like text.substring(begin, end) to get the keyword
+         *
+         * @param begin the beginning index, inclusive.
+         * @param end   the ending index, exclusive.
+         * @param value the value assigned to the keyword
+         */
+        void hit(int begin, int end, V value);
+    }
+
+    /**
+     * Processor handles the output when hit a keyword, with more detail
+     */
+    public interface IHitFull<V>
+    {
+        /**
+         * Hit a keyword, you can use some code like text.substring(begin, end) to get the keyword
+         *
+         * @param begin the beginning index, inclusive.
+         * @param end   the ending index, exclusive.
+         * @param value the value assigned to the keyword
+         * @param index the index of the value assigned to the keyword, you can use the integer as a perfect hash value
+         */
+        void hit(int begin, int end, V value, int index);
+    }
+
+    /**
+     * Callback that allows to cancel the search process.
+     */
+    public interface IHitCancellable<V>
+    {
+        /**
+         * Hit a keyword, you can use some code like text.substring(begin, end) to get the keyword
+         *
+         * @param begin the beginning index, inclusive.
+         * @param end   the ending index, exclusive.
+         * @param value the value assigned to the keyword
+         * @return Return true for continuing the search and false for stopping it.
+         */
+        boolean hit(int begin, int end, V value);
+    }
+
+    /**
+     * Processor handles the output when hit a keyword in a batch of documents
+     */
+    public interface IHitBatch<V>
+    {
+        /**
+         * Hit a keyword
+         *
+         * @param doc   the index of the document in the batch
+         * @param begin the beginning index in the document, inclusive.
+         * @param end   the ending index in the document, exclusive.
+         * @param value the value assigned to the keyword
+         */
+        void hit(int doc, int begin, int end, V value);
+    }
+
+    /**
+     * Processor handles the output when hit a keyword in a stream longer than 2G chars
+     */
+    public interface IHitLong<V>
+    {
+        /**
+         * Hit a keyword
+         *
+         * @param begin the beginning offset in the whole stream, inclusive.
+         * @param end   the ending offset in the whole stream, exclusive.
+         * @param value the value assigned to the keyword
+         */
+        void hit(long begin, long end, V value);
+    }
+
+    /**
+     * A result output
+     *
+     * @param <V> the value type
+     */
+    public static class Hit<V>
+    {
+        /**
+         * the beginning index, inclusive.
+         */
+        public final int begin;
+        /**
+         * the ending index, exclusive.
+         */
+        public final int end;
+        /**
+         * the value assigned to the keyword
+         */
+        public final V value;
+
+        public Hit(int begin, int end, V value)
+        {
+            this.begin = begin;
+            this.end = end;
+            this.value = value;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("[%d:%d]=%s", begin, end, value);
+        }
+    }
+
+    /**
+     * Create a matcher scanning a text fed piece by piece, e.g. from a network stream
+     *
+     * @param processor A processor which handles the output, with offsets in the whole stream
+     * @return a new matcher starting from the root
+     */
+    public Matcher<V> matcher(IHitLong<V> processor)
+    {
+        return new Matcher<V>(this, processor);
+    }
+
+    /**
+     * A resumable scanner keeping the state of the automaton and the offset between feeds, so that a text can be scanned
+     * through a fixed-size buffer without copying or rescanning at the buffer boundaries. A matcher is not thread safe,
+     * create one per stream.
+     *
+     * @param <V> the value type
+     */
+    public static class Matcher<V>
+    {
+        private final AhoCorasickDoubleArrayTrie<V> trie;
+        private final IHitLong<V> processor;
+        /**
+         * the state after the chars fed so far
+         */
+        private int currentState;
+        /**
+         * the amount of chars fed so far
+         */
+        private long position;
+
+        Matcher(AhoCorasickDoubleArrayTrie<V> trie, IHitLong<V> processor)
+        {
+            this.trie = trie;
+            this.processor = processor;
+        }
+
+        /**
+         * Feed the next piece of the text
+         *
+         * @param buf the buffer
+         * @param off the offset of the piece in the buffer
+         * @param len the length of the piece
+         */
+        public void feed(char[] buf, int off, int len)
+        {
+            int[] outputOffsets = trie.outputOffsets, outputIds = trie.outputIds, l = trie.l;
+            V[] v = trie.v;
+            int state = currentState;
+            long end = position;
+            for (int i = off; i < off + len; ++i)
+            {
+                state = trie.getState(state, buf[i]);
+                ++end;
+                for (int o = outputOffsets[state], oEnd = outputOffsets[state + 1]; o < oEnd; ++o)
+                {
+                    int hit = outputIds[o];
+                    processor.hit(end - l[hit], end, v[hit]);
+                }
+            }
+            currentState = state;
+            position = end;
+        }
+
+        /**
+         * Feed the next piece of the text
+         *
+         * @param text the piece
+         */
+        public void feed(CharSequence text)
+        {
+            int[] outputOffsets = trie.outputOffsets, outputIds = trie.outputIds, l = trie.l;
+            V[] v = trie.v;
+            int state = currentState;
+            long end = position;
+            for (int i = 0; i < text.length(); ++i)
+            {
+                state = trie.getState(state, text.charAt(i));
+                ++end;
+                for (int o = outputOffsets[state], oEnd = outputOffsets[state + 1]; o < oEnd; ++o)
+                {
+                    int hit = outputIds[o];
+                    processor.hit(end - l[hit], end, v[hit]);
+                }
+            }
+            currentState = state;
+            position = end;
+        }
+
+        /**
+         * Feed all the chars of a reader until its end, through a fixed-size buffer. The reader is not closed.
+         *
+         * @param reader the reader
+         * @return the amount of chars read
+         * @throws IOException if the reader fails
+         */
+        public long feed(Reader reader) throws IOException
+        {
+            char[] buffer = new char[8192];
+            long total = 0;
+            int n;
+            while ((n = reader.read(buffer)) != -1)
+            {
+                feed(buffer, 0, n);
+                total += n;
+            }
+            return total;
+        }
+
+        /**
+         * @return the amount of chars fed so far, i.e. the offset of the next char
+         */
+        public long position()
+        {
+            return position;
+        }
+
+        /**
+         * Restart from the root and offset 0, for a new stream
+         */
+        public void reset()
+        {
+            currentState = 0;
+            position = 0;
+        }
+    }
+
+    /**
+     * transmit state, supports failure function
+     *
+     * @param currentState
+     * @param character
+     * @return
+     */
+    protected int getState(int currentState, char character)
+    {
+        if (alphabet != null) character = alphabet[character];
+        if (dfa != null)
+        {
+            int row = dfaRow[currentState];
+            if (row >= 0) return dfa[row + dfaClass[character]]; // 确定性的状态直接查表
+        }
+        int newCurrentState = transitionWithRoot(currentState, character);  // 先按success跳转
         while (newCurrentState == -1) // 跳转失败的话，按failure跳转
         {
             currentState = fail[currentState];
@@ -423,13 +1344,10 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
      */
     private void storeEmits(int position, int currentState, List<Hit<V>> collectedEmits)
     {
-        int[] hitArray = output[currentState];
-        if (hitArray != null)
+        for (int o = outputOffsets[currentState], end = outputOffsets[currentState + 1]; o < end; ++o)
         {
-            for (int hit : hitArray)
-            {
-                collectedEmits.add(new Hit<V>(position - l[hit], position, v[hit]));
-            }
+            int hit = outputIds[o];
+            collectedEmits.add(new Hit<V>(position - l[hit], position, v[hit]));
         }
     }
 
@@ -479,16 +1397,479 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
 
 
     /**
-     * Build a AhoCorasickDoubleArrayTrie from a map
+     * Build a AhoCorasickDoubleArrayTrie from a map
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        build(map, new BuildOptions());
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from a map
+     *
+     * @param map     a map containing key-value pairs
+     * @param options optional settings of the build
+     */
+    public void build(Map<String, V> map, BuildOptions options)
+    {
+        char[] fold = options.foldTable();
+        if (fold != null)
+        {
+            Map<String, V> foldedMap = new LinkedHashMap<String, V>();
+            for (Map.Entry<String, V> entry : map.entrySet())
+            {
+                foldedMap.put(fold(entry.getKey(), fold), entry.getValue());
+            }
+            map = foldedMap;
+        }
+        new Builder().build(map, options, fold);
+        buildDfa(options);
+    }
+
+    /**
+     * build the DFA of the options and record its time in the report
+     */
+    private void buildDfa(BuildOptions options)
+    {
+        long start = System.nanoTime();
+        buildDfa(options.getDfaDepth());
+        if (buildReport != null) buildReport.dfaNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @return the statistics of the last build or {@link #relayout(CharSequence...)}, or null if the automaton was
+     * loaded instead
+     * @see BuildOptions#setDensityThreshold(double)
+     */
+    public BuildReport getBuildReport()
+    {
+        return buildReport;
+    }
+
+    /**
+     * fold a key by a table
+     */
+    private static String fold(String key, char[] fold)
+    {
+        char[] chars = key.toCharArray();
+        for (int i = 0; i < chars.length; ++i)
+        {
+            chars[i] = fold[chars[i]];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from keys in ascending order, e.g. the keys of a TreeMap. The intermediate
+     * trie is never materialized, so it takes much less memory and time than {@link #build(Map)}, and the result is
+     * identical for keys other than the empty one.
+     *
+     * @param sortedKeys the keys in strictly ascending order of {@link String#compareTo(String)}
+     * @param values     the value of every key
+     * @throws IllegalArgumentException if the keys are not sorted, have duplicates or don't match the values
+     */
+    public void build(String[] sortedKeys, V[] values)
+    {
+        build(sortedKeys, values, new BuildOptions());
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from keys in ascending order, the executor of the options is not used.
+     *
+     * @param sortedKeys the keys in strictly ascending order of {@link String#compareTo(String)}
+     * @param values     the value of every key
+     * @param options    optional settings of the build
+     * @throws IllegalArgumentException if the keys are not sorted, have duplicates or don't match the values
+     * @see #build(String[], Object[])
+     */
+    public void build(String[] sortedKeys, V[] values, BuildOptions options)
+    {
+        if (sortedKeys.length != values.length)
+            throw new IllegalArgumentException("There are " + sortedKeys.length + " keys but " + values.length + " values");
+        int length = 0;
+        for (String key : sortedKeys)
+        {
+            length += key.length();
+        }
+        // 将所有的词拼接到一个数组中
+        char[] fold = options.foldTable();
+        KeyPool keys = new KeyPool(length, sortedKeys.length, fold);
+        for (String key : sortedKeys)
+        {
+            keys.add(key);
+        }
+        v = values.clone();
+        new SortedBuilder(keys.pool, keys.offsets()).build(options, fold);
+        buildDfa(options);
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from entries in ascending order of keys, e.g. read from a sorted file. Only
+     * the chars of the keys and the values are kept during the build, no Map is needed.
+     *
+     * @param sortedEntries the entries in strictly ascending order of keys, compared char by char as
+     *                      {@link String#compareTo(String)} does
+     * @throws IllegalArgumentException if the keys are not sorted or have duplicates
+     * @see #build(String[], Object[])
+     */
+    public void build(Iterator<? extends Map.Entry<? extends CharSequence, ? extends V>> sortedEntries)
+    {
+        build(sortedEntries, new BuildOptions());
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from entries in ascending order of keys, the executor of the options is not
+     * used.
+     *
+     * @param sortedEntries the entries in strictly ascending order of keys
+     * @param options       optional settings of the build
+     * @throws IllegalArgumentException if the keys are not sorted or have duplicates
+     * @see #build(Iterator)
+     */
+    @SuppressWarnings("unchecked")
+    public void build(Iterator<? extends Map.Entry<? extends CharSequence, ? extends V>> sortedEntries, BuildOptions options)
+    {
+        char[] fold = options.foldTable();
+        KeyPool keys = new KeyPool(1024, 16, fold);
+        Object[] values = new Object[16];
+        while (sortedEntries.hasNext())
+        {
+            Map.Entry<? extends CharSequence, ? extends V> entry = sortedEntries.next();
+            if (keys.size == values.length)
+                values = Arrays.copyOf(values, values.length * 2);
+            values[keys.size] = entry.getValue();
+            keys.add(entry.getKey());
+        }
+        v = (V[]) Arrays.copyOf(values, keys.size);
+        new SortedBuilder(keys.pool, keys.offsets()).build(options, fold);
+        buildDfa(options);
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from a reader of sorted lines, one key per line, all values are null.
+     * Empty lines are skipped and the reader is not closed.
+     *
+     * @param sortedLines the keys in strictly ascending order, separated by '\n' or "\r\n"
+     * @throws IOException              if the reader fails
+     * @throws IllegalArgumentException if the keys are not sorted or have duplicates
+     */
+    public void build(Reader sortedLines) throws IOException
+    {
+        build(sortedLines, new BuildOptions());
+    }
+
+    /**
+     * Build a AhoCorasickDoubleArrayTrie from a reader of sorted lines, the executor of the options is not used.
+     *
+     * @param sortedLines the keys in strictly ascending order, separated by '\n' or "\r\n"
+     * @param options     optional settings of the build
+     * @throws IOException              if the reader fails
+     * @throws IllegalArgumentException if the keys are not sorted or have duplicates
+     * @see #build(Reader)
+     */
+    @SuppressWarnings("unchecked")
+    public void build(Reader sortedLines, BuildOptions options) throws IOException
+    {
+        char[] fold = options.foldTable();
+        KeyPool keys = new KeyPool(1024, 16, fold);
+        char[] buffer = new char[8192];
+        int n;
+        // 直接将字符读入词池，不为每行创建String
+        while ((n = sortedLines.read(buffer)) != -1)
+        {
+            for (int i = 0; i < n; ++i)
+            {
+                char c = buffer[i];
+                if (c == '\n')
+                    keys.endLine();
+                else
+                    keys.append(c);
+            }
+        }
+        keys.endLine();
+        v = (V[]) new Object[keys.size];
+        new SortedBuilder(keys.pool, keys.offsets()).build(options, fold);
+        buildDfa(options);
+    }
+
+    /**
+     * The chars of sorted keys packed into one array
+     */
+    private static class KeyPool
+    {
+        /**
+         * the chars of all keys
+         */
+        char[] pool;
+        /**
+         * key i occupies pool[offsets[i], offsets[i + 1])
+         */
+        int[] offsets;
+        /**
+         * the amount of keys
+         */
+        int size;
+        /**
+         * the length of the key being added
+         */
+        private int pending;
+        /**
+         * the folded form of every char, null if the chars are kept as is
+         */
+        private final char[] fold;
+
+        KeyPool(int length, int keyCount, char[] fold)
+        {
+            pool = new char[Math.max(length, 16)];
+            offsets = new int[keyCount + 1];
+            this.fold = fold;
+        }
+
+        /**
+         * append a key
+         *
+         * @param key the key, must be larger than the last one
+         */
+        void add(CharSequence key)
+        {
+            for (int i = 0; i < key.length(); ++i)
+            {
+                append(key.charAt(i));
+            }
+            endKey();
+        }
+
+        /**
+         * append a char to the key being added
+         */
+        void append(char c)
+        {
+            int end = offsets[size] + pending;
+            if (end == pool.length)
+                pool = Arrays.copyOf(pool, (int) Math.min(Integer.MAX_VALUE - 8, pool.length * 2L));
+            pool[end] = fold == null ? c : fold[c];
+            ++pending;
+        }
+
+        /**
+         * finish the key being added
+         */
+        void endKey()
+        {
+            if (size + 1 == offsets.length)
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[size + 1] = offsets[size] + pending;
+            pending = 0;
+            ++size;
+            if (size > 1 && compare(size - 2, size - 1) >= 0)
+                throw new IllegalArgumentException("The keys are not in strictly ascending order: " + key(size - 2) + ", " + key(size - 1));
+        }
+
+        /**
+         * finish a line, dropping a trailing '\r' and skipping empty lines
+         */
+        void endLine()
+        {
+            int start = offsets[size];
+            if (pending > 0 && pool[start + pending - 1] == '\r')
+                --pending;
+            if (pending > 0)
+                endKey();
+        }
+
+        /**
+         * compare two keys char by char
+         */
+        private int compare(int a, int b)
+        {
+            int offsetA = offsets[a], lengthA = offsets[a + 1] - offsetA;
+            int offsetB = offsets[b], lengthB = offsets[b + 1] - offsetB;
+            int n = Math.min(lengthA, lengthB);
+            for (int i = 0; i < n; ++i)
+            {
+                int diff = pool[offsetA + i] - pool[offsetB + i];
+                if (diff != 0) return diff;
+            }
+            return lengthA - lengthB;
+        }
+
+        private String key(int i)
+        {
+            return new String(pool, offsets[i], offsets[i + 1] - offsets[i]);
+        }
+
+        /**
+         * @return the offsets of all keys, trimmed to size + 1
+         */
+        int[] offsets()
+        {
+            return offsets.length == size + 1 ? offsets : Arrays.copyOf(offsets, size + 1);
+        }
+    }
+
+    /**
+     * Precompute the transitions of the states shallower than {@code depth} into a DFA table, so that scanning these
+     * states takes exactly one lookup per character no matter how deep their failure chains are.<br>
+     * The table is not written by {@link #save(ObjectOutputStream)}, call this method again after
+     * {@link #load(ObjectInputStream)} if needed.
+     *
+     * @param depth 1 for the root only, {@link Integer#MAX_VALUE} for the whole automaton, 0 to drop the table
+     * @see BuildOptions#setDfaDepth(int)
+     */
+    public void buildDfa(int depth)
+    {
+        dfaRow = null;
+        dfa = null;
+        dfaClass = null;
+        if (depth <= 0) return;
+
+        // 统计每个字符作为边出现的次数，高频字符排在每一行的前面
+        int[] frequency = new int[Character.MAX_VALUE + 1];
+        for (int p = 0; p < check.length; ++p)
+        {
+            int parentBase = check[p];
+            if (parentBase > 0 && p != parentBase)
+            {
+                ++frequency[p - parentBase - 1];
+            }
+        }
+        char[] classes = rankByFrequency(frequency); // 第0列留给不出现在任何词中的字符
+        if (classes == null) throw new IllegalArgumentException("Every character appears in keys, the DFA is too big");
+        int width = 1;
+        for (char k : classes)
+        {
+            width = Math.max(width, k + 1);
+        }
+        char[] columnChar = new char[width];
+        for (int c = 0; c < classes.length; ++c)
+        {
+            columnChar[classes[c]] = (char) c;
+        }
+
+        // 按bfs顺序为每个深度小于depth的状态生成一行，行的内容 = fail状态的行 + 自己的goto
+        int[] rows = new int[fail.length];
+        Arrays.fill(rows, -1);
+        int[] table = new int[width * 64];
+        int[] queue = new int[fail.length];
+        int head = 0, tail = 0;
+        queue[tail++] = 0;
+        int levelEnd = tail;
+        int level = 0;
+        int rowCount = 0;
+        while (head < tail)
+        {
+            if (head == levelEnd)
+            {
+                ++level;
+                levelEnd = tail;
+            }
+            int state = queue[head++];
+            if ((long) (rowCount + 1) * width > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("The DFA is too big, please use a smaller depth than " + depth);
+            int row = rowCount++ * width;
+            if (row + width > table.length)
+                table = Arrays.copyOf(table, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(row + width, table.length * 2L)));
+            if (state != 0)
+                System.arraycopy(table, rows[fail[state]], table, row, width);
+            rows[state] = row;
+            for (int k = 1; k < width; ++k)
+            {
+                int child = transitionWithRoot(state, columnChar[k]);
+                if (child > 0)
+                {
+                    table[row + k] = child;
+                    if (level + 1 < depth) queue[tail++] = child;
+                }
+            }
+        }
+
+        dfaRow = rows;
+        dfa = Arrays.copyOf(table, rowCount * width);
+        dfaClass = classes;
+    }
+
+
+    /**
+     * rank the characters by frequency
+     *
+     * @param frequency the frequency of every character
+     * @return 1 for the most frequent character, 2 for the next and so on, 0 for the absent ones,
+     * or null if every character is present so that the ranks don't fit in char
+     */
+    private static char[] rankByFrequency(int[] frequency)
+    {
+        long[] order = new long[frequency.length];
+        int n = 0;
+        for (int c = 0; c < frequency.length; ++c)
+        {
+            if (frequency[c] > 0)
+                order[n++] = ((long) (Integer.MAX_VALUE - frequency[c]) << 16) | c;
+        }
+        if (n > Character.MAX_VALUE) return null;
+        Arrays.sort(order, 0, n);
+        char[] rank = new char[frequency.length];
+        for (int i = 0; i < n; ++i)
+        {
+            rank[(int) (order[i] & 0xFFFF)] = (char) (i + 1);
+        }
+        return rank;
+    }
+
+    /**
+     * Relay out the double array by a profile of sample texts: the sibling groups probed most often while scanning the
+     * samples are placed first, next to each other at the front of base and check, and the cold ones follow in their
+     * old order. Only the positions of the states change, the matches stay the same. The DFA table, if any, is rebuilt
+     * to the same depth.<br>
+     * Don't scan with this automaton while it's being relaid out, swap a relaid out copy in instead.
      *
-     * @param map a map containing key-value pairs
+     * @param samples texts like the ones to be scanned
      */
-    public void build(Map<String, V> map)
+    public void relayout(CharSequence... samples)
     {
-        new Builder().build(map);
+        if (v == null || v.length == 0) return;
+        // 扫描样本，统计每个状态的兄弟组被查询的次数，查DFA表的状态不访问base与check
+        long[] heat = new long[size];
+        for (CharSequence text : samples)
+        {
+            int currentState = 0;
+            for (int i = 0; i < text.length(); ++i)
+            {
+                char c = text.charAt(i);
+                if (alphabet != null) c = alphabet[c];
+                if (dfa != null && dfaRow[currentState] >= 0)
+                {
+                    currentState = dfa[dfaRow[currentState] + dfaClass[c]];
+                    continue;
+                }
+                int next;
+                while (true)
+                {
+                    ++heat[currentState];
+                    next = transitionWithRoot(currentState, c);
+                    if (next != -1) break;
+                    currentState = fail[currentState];
+                }
+                currentState = next;
+            }
+        }
+        int dfaDepth = 0;
+        if (dfaRow != null)
+        {
+            int[] depth = stateDepth();
+            for (int s = 0; s < dfaRow.length; ++s)
+            {
+                if (dfaRow[s] >= 0) dfaDepth = Math.max(dfaDepth, depth[s] + 1);
+            }
+        }
+        new Relayout().relayout(heat);
+        depth = null;
+        long start = System.nanoTime();
+        buildDfa(dfaDepth);
+        buildReport.dfaNanos = System.nanoTime() - start;
     }
 
-
     /**
      * match exactly by a key
      *
@@ -529,7 +1910,7 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
 
         for (int i = pos; i < len; i++)
         {
-            p = b + (int) (key.charAt(i)) + 1;
+            p = b + (int) (alphabet == null ? key.charAt(i) : alphabet[key.charAt(i)]) + 1;
             if (b == check[p])
                 b = base[p];
             else
@@ -652,65 +2033,609 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
 //        }
 //    }
 
-    /**
-     * @return the size of the keywords
-     */
-    public int size()
-    {
-        return v.length;
+    /**
+     * @return the size of the keywords
+     */
+    public int size()
+    {
+        return v.length;
+    }
+
+    /**
+     * The placement of sibling groups into the double array, shared by the builders
+     */
+    private abstract class DoubleArrayBuilder
+    {
+        /**
+         * whether the position has been used
+         */
+        protected boolean[] used;
+        /**
+         * the allocSize of the dynamic array
+         */
+        protected int allocSize;
+        /**
+         * a parameter controls the memory growth speed of the dynamic array
+         */
+        protected int progress;
+        /**
+         * the next position to check unused memory
+         */
+        protected int nextCheckPos;
+        /**
+         * the size of the key-pair sets
+         */
+        protected int keySize;
+        /**
+         * the largest code of the compacted alphabet
+         */
+        protected int alphabetSize;
+        /**
+         * the tuning parameters of the placement
+         */
+        protected int initialSize = 65536 * 32;
+        protected double growthFactor = 1.05;
+        protected double densityThreshold = 0.95;
+        /**
+         * the statistics of this build
+         */
+        protected final BuildReport report = new BuildReport();
+
+        /**
+         * take the tuning parameters of the placement
+         */
+        protected void configure(BuildOptions options)
+        {
+            size = 0; // 重新构建时不沿用上次的大小
+            initialSize = options.getInitialSize();
+            growthFactor = options.getGrowthFactor();
+            densityThreshold = options.getDensityThreshold();
+        }
+
+        /**
+         * fill in the sizes of the report and publish it, the double array must be complete
+         */
+        protected void finishReport(int keyCount)
+        {
+            report.keyCount = keyCount;
+            report.slotCount = size;
+            int occupied = 1; // 根节点
+            for (int p = 1; p < size; ++p)
+            {
+                if (check[p] > 0) ++occupied;
+            }
+            report.occupiedSlotCount = occupied;
+            buildReport = report;
+        }
+
+        /**
+         * map the characters of keys to dense codes, the more frequent the smaller
+         *
+         * @param frequency the frequency of every character in keys
+         * @return the code of every character, or null if every character is used
+         */
+        protected char[] compactAlphabet(int[] frequency)
+        {
+            char[] codes = rankByFrequency(frequency);
+            if (codes == null) return null;
+            alphabetSize = 0;
+            for (char code : codes)
+            {
+                alphabetSize = Math.max(alphabetSize, code);
+            }
+            return codes;
+        }
+
+        /**
+         * compose the folding of chars with their codes, so that the text is folded by the same lookup which maps its
+         * chars to codes
+         *
+         * @param codes the code of every character, null if the raw characters are used as codes
+         * @param fold  the folded form of every char of the text, null if not folded
+         * @return the code of every folded character
+         */
+        protected char[] foldAlphabet(char[] codes, char[] fold)
+        {
+            if (fold == null) return codes;
+            char[] folded = new char[fold.length];
+            alphabetSize = 0;
+            for (int c = 0; c < fold.length; ++c)
+            {
+                folded[c] = codes == null ? fold[c] : codes[fold[c]];
+                alphabetSize = Math.max(alphabetSize, folded[c]);
+            }
+            return folded;
+        }
+
+        /**
+         * allocate the memory of the dynamic array
+         *
+         * @param newSize of the new array
+         * @return the new-allocated-size
+         */
+        protected int resize(int newSize)
+        {
+            if (allocSize > 0) ++report.resizeCount;
+            report.peakArrayBytes = Math.max(report.peakArrayBytes, 9L * (allocSize + newSize)); // 新旧数组同时存在
+            int[] base2 = new int[newSize];
+            int[] check2 = new int[newSize];
+            boolean[] used2 = new boolean[newSize];
+            if (allocSize > 0)
+            {
+                System.arraycopy(base, 0, base2, 0, allocSize);
+                System.arraycopy(check, 0, check2, 0, allocSize);
+                System.arraycopy(used, 0, used2, 0, allocSize);
+            }
+
+            base = base2;
+            check = check2;
+            used = used2;
+
+            return allocSize = newSize;
+        }
+
+        /**
+         * find a free begin for a group of siblings and occupy their positions in check
+         *
+         * @param codes the codes of the siblings in ascending order
+         * @param count the amount of the siblings
+         * @return the begin, i.e. the base of their parent
+         */
+        protected int place(int[] codes, int count)
+        {
+            int begin = 0;
+            int pos = Math.max(codes[0] + 1, nextCheckPos) - 1;
+            final int start = pos;
+            int nonzero_num = 0;
+            int first = 0;
+
+            if (allocSize <= pos)
+                resize(pos + 1);
+
+            outer:
+            // 此循环体的目标是找出满足base[begin + a1...an]  == 0的n个空闲空间,a1...an是siblings中的n个节点
+            while (true)
+            {
+                pos++;
+
+                if (allocSize <= pos)
+                    resize(pos + 1);
+
+                if (check[pos] != 0)
+                {
+                    nonzero_num++;
+                    continue;
+                }
+                else if (first == 0)
+                {
+                    nextCheckPos = pos;
+                    first = 1;
+                }
+
+                begin = pos - codes[0]; // 当前位置离第一个兄弟节点的距离
+                if (allocSize <= (begin + codes[count - 1]))
+                {
+                    // progress can be zero // 防止progress产生除零错误
+                    // 按剩余词的比例估计增长，最多翻倍，以免初始空间较小时一次申请过多
+                    double toSize = Math.max(growthFactor, Math.min(2.0, 1.0 * keySize / (progress + 1))) * allocSize;
+                    toSize = Math.max(toSize, begin + codes[count - 1] + 1.0);
+                    int maxSize = (int) (Integer.MAX_VALUE * 0.95);
+                    if (allocSize >= maxSize) throw new RuntimeException("Double array trie is too big.");
+                    else resize((int) Math.min(toSize, maxSize));
+                }
+
+                if (used[begin])
+                    continue;
+
+                for (int i = 1; i < count; i++)
+                    if (check[begin + codes[i]] != 0)
+                        continue outer;
+
+                break;
+            }
+
+            // -- Simple heuristics --
+            // if the percentage of non-empty contents in check between the
+            // index
+            // 'next_check_pos' and 'check' is greater than some constant value
+            // (e.g. 0.9),
+            // new 'next_check_pos' index is written by 'check'.
+            if (1.0 * nonzero_num / (pos - nextCheckPos + 1) >= densityThreshold)
+                nextCheckPos = pos; // 从位置 next_check_pos 开始到 pos 间，如果已占用的空间在95%以上，下次插入节点时，直接从 pos 位置处开始查找
+            used[begin] = true;
+            report.probeCount += pos - start;
+
+            size = (size > begin + codes[count - 1] + 1) ? size : begin + codes[count - 1] + 1;
+
+            for (int i = 0; i < count; i++)
+            {
+                check[begin + codes[i]] = begin;
+            }
+            return begin;
+        }
+
+        /**
+         * free the unnecessary memory
+         */
+        protected void loseWeight()
+        {
+            int tail = alphabet == null ? 65535 : alphabetSize + 3; // 任何状态按任何编码转移都不越界
+            int[] nbase = new int[size + tail];
+            System.arraycopy(base, 0, nbase, 0, size);
+            base = nbase;
+
+            int[] ncheck = new int[size + tail];
+            System.arraycopy(check, 0, ncheck, 0, Math.min(check.length, ncheck.length));
+            check = ncheck;
+            if (size == 1) Arrays.fill(check, -1); // 没有词，fill -1 such that no transition is allowed
+        }
+    }
+
+    /**
+     * A builder placing sorted keys directly into the double array, without a trie of State objects. The nodes are
+     * numbered in bfs order and held in primitive arrays, the failure links are computed on the double array.
+     */
+    private class SortedBuilder extends DoubleArrayBuilder
+    {
+        /**
+         * the chars of all keys
+         */
+        private final char[] pool;
+        /**
+         * key i occupies pool[offsets[i], offsets[i + 1])
+         */
+        private final int[] offsets;
+        /**
+         * the position of every node in the double array, in bfs order
+         */
+        private int[] nodePos;
+        /**
+         * the position of the parent of every node
+         */
+        private int[] nodeParent;
+        /**
+         * the keys sharing the prefix of a node are [nodeLeft, nodeRight)
+         */
+        private int[] nodeLeft;
+        private int[] nodeRight;
+        /**
+         * the length of the prefix of every node
+         */
+        private int[] nodeDepth;
+        /**
+         * the amount of nodes
+         */
+        private int nodeSize;
+        /**
+         * buffers to sort the children by their codes in a compacted alphabet
+         */
+        private int[] sortedLefts;
+        private int[] sortedRights;
+
+        /**
+         * @param pool    the chars of all keys
+         * @param offsets key i occupies pool[offsets[i], offsets[i + 1])
+         */
+        public SortedBuilder(char[] pool, int[] offsets)
+        {
+            this.pool = pool;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Build from the sorted keys
+         *
+         * @param options optional settings of the build
+         * @param fold    the folded form of every char, null if not folded
+         */
+        public void build(BuildOptions options, char[] fold)
+        {
+            configure(options);
+            long start = System.nanoTime();
+            int keyCount = offsets.length - 1;
+            l = new int[keyCount];
+            maxLength = 0;
+            depth = null;
+            // 每个词新增的节点数 = 词长 - 与前一个词的公共前缀长
+            int nodeCount = 0;
+            for (int i = 0; i < keyCount; ++i)
+            {
+                l[i] = offsets[i + 1] - offsets[i];
+                nodeCount += l[i] - (i == 0 ? 0 : commonPrefixLength(i - 1, i));
+            }
+            nodePos = new int[nodeCount];
+            nodeParent = new int[nodeCount];
+            nodeLeft = new int[nodeCount];
+            nodeRight = new int[nodeCount];
+            nodeDepth = new int[nodeCount];
+            nodeSize = 0;
+            alphabet = null;
+            if (options.isCompactAlphabet())
+            {
+                int[] frequency = new int[Character.MAX_VALUE + 1];
+                for (int i = 0; i < offsets[keyCount]; ++i)
+                {
+                    ++frequency[pool[i]];
+                }
+                alphabet = compactAlphabet(frequency);
+            }
+            alphabet = foldAlphabet(alphabet, fold);
+            report.trieNanos = System.nanoTime() - start;
+            // 在有序的词上直接构建双数组trie树
+            start = System.nanoTime();
+            buildDoubleArrayTrie(keyCount);
+            used = null;
+            nodeRight = null;
+            loseWeight();
+            report.doubleArrayNanos = System.nanoTime() - start;
+            // 在双数组上构建failure表与output表
+            start = System.nanoTime();
+            constructFailureStates();
+            report.failureNanos = System.nanoTime() - start;
+            nodePos = nodeParent = nodeLeft = nodeDepth = null;
+            finishReport(keyCount);
+        }
+
+        /**
+         * @return the length of the common prefix of two keys
+         */
+        private int commonPrefixLength(int a, int b)
+        {
+            int offsetA = offsets[a], offsetB = offsets[b];
+            int n = Math.min(offsets[a + 1] - offsetA, offsets[b + 1] - offsetB);
+            int i = 0;
+            while (i < n && pool[offsetA + i] == pool[offsetB + i])
+                ++i;
+            return i;
+        }
+
+        private void buildDoubleArrayTrie(int keySize)
+        {
+            progress = 0;
+            this.keySize = keySize;
+            resize(initialSize); // 默认32个双字节
+
+            base[0] = 1;
+            nextCheckPos = 0;
+
+            int[] codes = new int[Character.MAX_VALUE + 2];
+            int[] lefts = new int[Character.MAX_VALUE + 2];
+            int[] rights = new int[Character.MAX_VALUE + 2];
+            long[] order = null;
+            if (alphabet != null)
+            {
+                order = new long[Character.MAX_VALUE + 2];
+                sortedLefts = new int[Character.MAX_VALUE + 2];
+                sortedRights = new int[Character.MAX_VALUE + 2];
+            }
+            if (fetch(0, keySize, 0, codes, lefts, rights, order) == 0)
+            {
+                size = 1; // 只保留根节点，loseWeight会把check填满-1
+                return;
+            }
+            insert(0, 0, keySize, 0, codes, lefts, rights, order);
+            // 节点数组本身就是bfs的队列
+            for (int head = 0; head < nodeSize; ++head)
+            {
+                insert(nodePos[head], nodeLeft[head], nodeRight[head], nodeDepth[head], codes, lefts, rights, order);
+            }
+        }
+
+        /**
+         * fetch the children of the node shared by the keys [left, right) at depth
+         *
+         * @param codes  the codes of the children, 0 for the end of a key
+         * @param lefts  the first key under every child
+         * @param rights the end of keys under every child
+         * @param order  a buffer to sort the children by codes, null if the codes follow the order of chars
+         * @return the amount of children
+         */
+        private int fetch(int left, int right, int depth, int[] codes, int[] lefts, int[] rights, long[] order)
+        {
+            int n = 0;
+            int i = left;
+            if (i < right && offsets[i + 1] - offsets[i] == depth)
+            {
+                if (depth > 0)
+                {
+                    // 词的终止，有序时只可能是第一个词
+                    codes[n] = 0;
+                    lefts[n] = i;
+                    rights[n] = i + 1;
+                    ++n;
+                }
+                ++i;
+            }
+            while (i < right)
+            {
+                char c = pool[offsets[i] + depth];
+                int j = i + 1;
+                while (j < right && pool[offsets[j] + depth] == c)
+                    ++j;
+                codes[n] = (alphabet == null ? c : alphabet[c]) + 1;
+                lefts[n] = i;
+                rights[n] = j;
+                ++n;
+                i = j;
+            }
+            if (order != null && n > 1)
+            {
+                for (int k = 0; k < n; ++k)
+                {
+                    order[k] = ((long) codes[k] << 32) | k;
+                }
+                Arrays.sort(order, 0, n);
+                for (int k = 0; k < n; ++k)
+                {
+                    int from = (int) order[k];
+                    codes[k] = (int) (order[k] >>> 32);
+                    sortedLefts[k] = lefts[from];
+                    sortedRights[k] = rights[from];
+                }
+                System.arraycopy(sortedLefts, 0, lefts, 0, n);
+                System.arraycopy(sortedRights, 0, rights, 0, n);
+            }
+            return n;
+        }
+
+        /**
+         * place the children of a node and append them to the nodes
+         *
+         * @param parent the position of the node
+         */
+        private void insert(int parent, int left, int right, int depth, int[] codes, int[] lefts, int[] rights, long[] order)
+        {
+            int n = fetch(left, right, depth, codes, lefts, rights, order);
+            int begin = place(codes, n);
+            for (int k = 0; k < n; ++k)
+            {
+                int pos = begin + codes[k];
+                if (codes[k] == 0)
+                {
+                    base[pos] = -lefts[k] - 1;
+                    progress++;
+                }
+                else
+                {
+                    nodePos[nodeSize] = pos;
+                    nodeParent[nodeSize] = parent;
+                    nodeLeft[nodeSize] = lefts[k];
+                    nodeRight[nodeSize] = rights[k];
+                    nodeDepth[nodeSize] = depth + 1;
+                    ++nodeSize;
+                }
+            }
+            base[parent] = begin;
+        }
+
+        /**
+         * construct failure table and output table in bfs order, the outputs of a node are its own key merged into
+         * the outputs of its failure in descending order
+         */
+        private void constructFailureStates()
+        {
+            fail = new int[size + 1];
+            outputOffsets = new int[size + 2];
+            for (int k = 0; k < nodeSize; ++k)
+            {
+                int state = nodePos[k];
+                int parent = nodeParent[k];
+                int failState = 0;
+                if (parent != 0)
+                {
+                    int code = state - check[state];
+                    failState = fail[parent];
+                    while (true)
+                    {
+                        int next = base[failState] + code;
+                        if (check[next] == base[failState])
+                        {
+                            failState = next;
+                            break;
+                        }
+                        if (failState == 0) break;
+                        failState = fail[failState];
+                    }
+                }
+                fail[state] = failState;
+                outputOffsets[state + 1] = outputOffsets[failState + 1] + (isKey(k) ? 1 : 0);
+            }
+
+            for (int i = 1; i < outputOffsets.length; ++i)
+            {
+                outputOffsets[i] += outputOffsets[i - 1];
+            }
+            outputIds = new int[outputOffsets[outputOffsets.length - 1]];
+            for (int k = 0; k < nodeSize; ++k)
+            {
+                int state = nodePos[k];
+                int o = outputOffsets[state];
+                int f = outputOffsets[fail[state]], fEnd = outputOffsets[fail[state] + 1];
+                if (isKey(k))
+                {
+                    int id = nodeLeft[k];
+                    while (f < fEnd && outputIds[f] > id)
+                        outputIds[o++] = outputIds[f++];
+                    outputIds[o++] = id;
+                }
+                while (f < fEnd)
+                    outputIds[o++] = outputIds[f++];
+            }
+        }
+
+        /**
+         * @return whether a key ends at the node
+         */
+        private boolean isKey(int node)
+        {
+            int key = nodeLeft[node];
+            return offsets[key + 1] - offsets[key] == nodeDepth[node];
+        }
     }
 
     /**
      * A builder to build the AhoCorasickDoubleArrayTrie
      */
-    private class Builder
+    private class Builder extends DoubleArrayBuilder
     {
         /**
          * the root state of trie
          */
         private State rootState = new State();
         /**
-         * whether the position has been used
-         */
-        private boolean[] used;
-        /**
-         * the allocSize of the dynamic array
-         */
-        private int allocSize;
-        /**
-         * a parameter controls the memory growth speed of the dynamic array
-         */
-        private int progress;
-        /**
-         * the next position to check unused memory
+         * sorts the siblings by their codes, which no longer follow the order of characters in a compacted alphabet
          */
-        private int nextCheckPos;
+        private final Comparator<Map.Entry<Integer, State>> siblingComparator = new Comparator<Map.Entry<Integer, State>>()
+        {
+            @Override
+            public int compare(Map.Entry<Integer, State> o1, Map.Entry<Integer, State> o2)
+            {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        };
+
         /**
-         * the size of the key-pair sets
+         * runs the parallel parts of the build, null to run them in the calling thread
          */
-        private int keySize;
+        private ExecutorService executor;
 
         /**
          * Build from a map
          *
-         * @param map a map containing key-value pairs
+         * @param map     a map containing key-value pairs
+         * @param options optional settings of the build
          */
         @SuppressWarnings("unchecked")
-        public void build(Map<String, V> map)
+        public void build(Map<String, V> map, BuildOptions options, char[] fold)
         {
+            executor = options.getExecutor();
+            configure(options);
+            long start = System.nanoTime();
             // 把值保存下来
             v = (V[]) map.values().toArray();
             l = new int[v.length];
+            maxLength = 0;
+            depth = null;
             Set<String> keySet = map.keySet();
+            // 按出现频次给字符编码
+            alphabet = foldAlphabet(options.isCompactAlphabet() ? compactAlphabet(keySet) : null, fold);
             // 构建二分trie树
             addAllKeyword(keySet);
+            report.trieNanos = System.nanoTime() - start;
             // 在二分trie树的基础上构建双数组trie树
+            start = System.nanoTime();
             buildDoubleArrayTrie(keySet.size());
             used = null;
+            report.doubleArrayNanos = System.nanoTime() - start;
             // 构建failure表并且合并output表
+            start = System.nanoTime();
             constructFailureStates();
             rootState = null;
+            report.failureNanos = System.nanoTime() - start;
+            start = System.nanoTime();
             loseWeight();
+            report.doubleArrayNanos += System.nanoTime() - start;
+            finishReport(keySet.size());
         }
 
         /**
@@ -730,39 +2655,164 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
             }
             for (Map.Entry<Character, State> entry : parent.getSuccess().entrySet())
             {
-                siblings.add(new AbstractMap.SimpleEntry<Integer, State>(entry.getKey() + 1, entry.getValue()));
+                char c = entry.getKey();
+                siblings.add(new AbstractMap.SimpleEntry<Integer, State>((alphabet == null ? c : alphabet[c]) + 1, entry.getValue()));
+            }
+            if (alphabet != null)
+            {
+                Collections.sort(siblings, siblingComparator);
             }
             return siblings.size();
         }
 
+        /**
+         * map the characters of keys to dense codes, the more frequent the smaller
+         *
+         * @param keywordSet the collection holding keywords
+         * @return the code of every character, or null if every character is used
+         */
+        private char[] compactAlphabet(Collection<String> keywordSet)
+        {
+            int[] frequency = new int[Character.MAX_VALUE + 1];
+            for (String keyword : keywordSet)
+            {
+                for (int i = 0; i < keyword.length(); ++i)
+                {
+                    ++frequency[keyword.charAt(i)];
+                }
+            }
+            return compactAlphabet(frequency);
+        }
+
         /**
          * add a keyword
          *
+         * @param state   the state to start from
          * @param keyword a keyword
+         * @param from    the index of the first char to add
          * @param index   the index of the keyword
          */
-        private void addKeyword(String keyword, int index)
+        private void addKeyword(State state, String keyword, int from, int index)
         {
-            State currentState = this.rootState;
-            for (Character character : keyword.toCharArray())
+            State currentState = state;
+            for (int i = from; i < keyword.length(); ++i)
             {
-                currentState = currentState.addState(character);
+                currentState = currentState.addState(keyword.charAt(i));
             }
             currentState.addEmit(index);
             l[index] = keyword.length();
         }
 
         /**
-         * add a collection of keywords
+         * add a collection of keywords, the subtrees of different first chars are built in parallel
          *
          * @param keywordSet the collection holding keywords
          */
         private void addAllKeyword(Collection<String> keywordSet)
         {
-            int i = 0;
-            for (String keyword : keywordSet)
+            final String[] keywords = keywordSet.toArray(new String[0]);
+            if (executor == null)
+            {
+                for (int i = 0; i < keywords.length; ++i)
+                {
+                    addKeyword(rootState, keywords[i], 0, i);
+                }
+                return;
+            }
+
+            // 先建好深度为1的节点，再把关键词按首字符分组（计数排序）
+            int[] count = new int[Character.MAX_VALUE + 2];
+            for (int i = 0; i < keywords.length; ++i)
+            {
+                if (keywords[i].length() == 0)
+                    addKeyword(rootState, keywords[i], 0, i);
+                else
+                    ++count[keywords[i].charAt(0) + 1];
+            }
+            for (int c = 1; c < count.length; ++c)
+            {
+                count[c] += count[c - 1];
+            }
+            final int[] order = new int[count[count.length - 1]];
+            final int[] firstCharStart = Arrays.copyOf(count, count.length);
+            for (int i = 0; i < keywords.length; ++i)
+            {
+                if (keywords[i].length() > 0)
+                    order[count[keywords[i].charAt(0)]++] = i;
+            }
+            for (int i = 0; i < order.length; ++i)
+            {
+                char c = keywords[order[i]].charAt(0);
+                if (i == firstCharStart[c]) rootState.addState(c);
+            }
+
+            // 每个任务负责若干个完整的首字符分组，各自只修改自己的子树
+            int chunk = Math.max(1, order.length / (Runtime.getRuntime().availableProcessors() * 8));
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (int begin = 0; begin < order.length; )
+            {
+                int end = Math.min(order.length, begin + chunk);
+                while (end < order.length && keywords[order[end]].charAt(0) == keywords[order[end - 1]].charAt(0))
+                    ++end;
+                final int from = begin, to = end;
+                tasks.add(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for (int i = from; i < to; ++i)
+                        {
+                            int index = order[i];
+                            String keyword = keywords[index];
+                            addKeyword(rootState.nextStateIgnoreRootState(keyword.charAt(0)), keyword, 1, index);
+                        }
+                        return null;
+                    }
+                });
+                begin = end;
+            }
+            invokeAll(tasks);
+        }
+
+        /**
+         * run the tasks with the executor and wait for all of them, or run them one by one without an executor
+         *
+         * @param tasks the tasks
+         */
+        private void invokeAll(List<Callable<Void>> tasks)
+        {
+            if (executor == null)
+            {
+                for (Callable<Void> task : tasks)
+                {
+                    try
+                    {
+                        task.call();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        throw e;
+                    }
+                    catch (Exception e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return;
+            }
+            List<Future<Void>> futures;
+            try
+            {
+                futures = executor.invokeAll(tasks);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while building", e);
+            }
+            for (Future<Void> future : futures)
             {
-                addKeyword(keyword, i++);
+                await(future);
             }
         }
 
@@ -772,61 +2822,127 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
         private void constructFailureStates()
         {
             fail = new int[size + 1];
-            output = new int[size + 1][];
-            Queue<State> queue = new ArrayDeque<State>();
+            outputOffsets = new int[size + 2];
+            List<State> acceptingStates = new ArrayList<State>();
+            List<State> level = new ArrayList<State>();
 
             // 第一步，将深度为1的节点的failure设为根节点
             for (State depthOneState : this.rootState.getStates())
             {
                 depthOneState.setFailure(this.rootState, fail);
-                queue.add(depthOneState);
-                constructOutput(depthOneState);
+                level.add(depthOneState);
+                countOutput(depthOneState, acceptingStates);
             }
 
-            // 第二步，为深度 > 1 的节点建立failure表，这是一个bfs
-            while (!queue.isEmpty())
+            // 第二步，为深度 > 1 的节点建立failure表，这是一个逐层的bfs
+            // 子节点的failure只依赖更浅的节点，所以同一层的节点可以并行处理
+            while (!level.isEmpty())
             {
-                State currentState = queue.remove();
+                int chunk = executor == null ? level.size() : Math.max(64, level.size() / (Runtime.getRuntime().availableProcessors() * 8));
+                List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+                final List<List<State>> nextLevels = new ArrayList<List<State>>();
+                final List<List<State>> acceptingLists = new ArrayList<List<State>>();
+                for (int begin = 0; begin < level.size(); begin += chunk)
+                {
+                    final List<State> states = level.subList(begin, Math.min(level.size(), begin + chunk));
+                    final List<State> nextLevel = new ArrayList<State>();
+                    final List<State> accepting = new ArrayList<State>();
+                    nextLevels.add(nextLevel);
+                    acceptingLists.add(accepting);
+                    tasks.add(new Callable<Void>()
+                    {
+                        @Override
+                        public Void call()
+                        {
+                            for (State currentState : states)
+                            {
+                                constructFailureStates(currentState, nextLevel, accepting);
+                            }
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(tasks);
 
-                for (Character transition : currentState.getTransitions())
+                level = new ArrayList<State>();
+                for (int i = 0; i < nextLevels.size(); ++i)
                 {
-                    State targetState = currentState.nextState(transition);
-                    queue.add(targetState);
+                    level.addAll(nextLevels.get(i));
+                    acceptingStates.addAll(acceptingLists.get(i));
+                }
+            }
 
-                    State traceFailureState = currentState.failure();
-                    while (traceFailureState.nextState(transition) == null)
-                    {
-                        traceFailureState = traceFailureState.failure();
-                    }
-                    State newFailureState = traceFailureState.nextState(transition);
-                    targetState.setFailure(newFailureState, fail);
-                    targetState.addEmit(newFailureState.emit());
-                    constructOutput(targetState);
+            // 第三步，将output表展开为outputOffsets和outputIds两个数组
+            constructOutput(acceptingStates);
+        }
+
+        /**
+         * construct the failure of the children of a state
+         *
+         * @param currentState    the state
+         * @param nextLevel       collects the children
+         * @param acceptingStates collects the children having outputs
+         */
+        private void constructFailureStates(State currentState, List<State> nextLevel, List<State> acceptingStates)
+        {
+            for (Character transition : currentState.getTransitions())
+            {
+                State targetState = currentState.nextState(transition);
+                nextLevel.add(targetState);
+
+                State traceFailureState = currentState.failure();
+                while (traceFailureState.nextState(transition) == null)
+                {
+                    traceFailureState = traceFailureState.failure();
                 }
+                State newFailureState = traceFailureState.nextState(transition);
+                targetState.setFailure(newFailureState, fail);
+                targetState.addEmit(newFailureState.emit());
+                countOutput(targetState, acceptingStates);
             }
         }
 
         /**
-         * construct output table
+         * count the outputs of a state into outputOffsets
+         *
+         * @param targetState     the state
+         * @param acceptingStates collects the states having outputs
          */
-        private void constructOutput(State targetState)
+        private void countOutput(State targetState, List<State> acceptingStates)
         {
             Collection<Integer> emit = targetState.emit();
             if (emit == null || emit.size() == 0) return;
-            int[] output = new int[emit.size()];
-            Iterator<Integer> it = emit.iterator();
-            for (int i = 0; i < output.length; ++i)
+            outputOffsets[targetState.getIndex() + 1] = emit.size();
+            acceptingStates.add(targetState);
+        }
+
+        /**
+         * construct output table
+         *
+         * @param acceptingStates the states having outputs
+         */
+        private void constructOutput(List<State> acceptingStates)
+        {
+            for (int i = 1; i < outputOffsets.length; ++i)
+            {
+                outputOffsets[i] += outputOffsets[i - 1];
+            }
+            outputIds = new int[outputOffsets[outputOffsets.length - 1]];
+            for (State state : acceptingStates)
             {
-                output[i] = it.next();
+                int o = outputOffsets[state.getIndex()];
+                for (int emit : state.emit())
+                {
+                    outputIds[o++] = emit;
+                }
             }
-            AhoCorasickDoubleArrayTrie.this.output[targetState.getIndex()] = output;
         }
 
         private void buildDoubleArrayTrie(int keySize)
         {
             progress = 0;
             this.keySize = keySize;
-            resize(65536 * 32); // 32个双字节
+            resize(initialSize); // 默认32个双字节
 
             base[0] = 1;
             nextCheckPos = 0;
@@ -836,36 +2952,11 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
             List<Map.Entry<Integer, State>> siblings = new ArrayList<Map.Entry<Integer, State>>(root_node.getSuccess().entrySet().size());
             fetch(root_node, siblings);
             if (siblings.isEmpty())
-                Arrays.fill(check, -1); // fill -1 such that no transition is allowed
+                size = 1; // 只保留根节点，loseWeight会把check填满-1
             else
                 insert(siblings);
         }
 
-        /**
-         * allocate the memory of the dynamic array
-         *
-         * @param newSize of the new array
-         * @return the new-allocated-size
-         */
-        private int resize(int newSize)
-        {
-            int[] base2 = new int[newSize];
-            int[] check2 = new int[newSize];
-            boolean[] used2 = new boolean[newSize];
-            if (allocSize > 0)
-            {
-                System.arraycopy(base, 0, base2, 0, allocSize);
-                System.arraycopy(check, 0, check2, 0, allocSize);
-                System.arraycopy(used, 0, used2, 0, allocSize);
-            }
-
-            base = base2;
-            check = check2;
-            used = used2;
-
-            return allocSize = newSize;
-        }
-
         /**
          * insert the siblings to double array trie
          *
@@ -892,70 +2983,12 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
             Map.Entry<Integer, List<Map.Entry<Integer, State>>> tCurrent = siblingQueue.remove();
             List<Map.Entry<Integer, State>> siblings = tCurrent.getValue();
 
-            int begin = 0;
-            int pos = Math.max(siblings.get(0).getKey() + 1, nextCheckPos) - 1;
-            int nonzero_num = 0;
-            int first = 0;
-
-            if (allocSize <= pos)
-                resize(pos + 1);
-
-            outer:
-            // 此循环体的目标是找出满足base[begin + a1...an]  == 0的n个空闲空间,a1...an是siblings中的n个节点
-            while (true)
-            {
-                pos++;
-
-                if (allocSize <= pos)
-                    resize(pos + 1);
-
-                if (check[pos] != 0)
-                {
-                    nonzero_num++;
-                    continue;
-                }
-                else if (first == 0)
-                {
-                    nextCheckPos = pos;
-                    first = 1;
-                }
-
-                begin = pos - siblings.get(0).getKey(); // 当前位置离第一个兄弟节点的距离
-                if (allocSize <= (begin + siblings.get(siblings.size() - 1).getKey()))
-                {
-                    // progress can be zero // 防止progress产生除零错误
-                    double toSize = Math.max(1.05, 1.0 * keySize / (progress + 1)) * allocSize;
-                    int maxSize = (int) (Integer.MAX_VALUE * 0.95);
-                    if (allocSize >= maxSize) throw new RuntimeException("Double array trie is too big.");
-                    else resize((int) Math.min(toSize, maxSize));
-                }
-
-                if (used[begin])
-                    continue;
-
-                for (int i = 1; i < siblings.size(); i++)
-                    if (check[begin + siblings.get(i).getKey()] != 0)
-                        continue outer;
-
-                break;
-            }
-
-            // -- Simple heuristics --
-            // if the percentage of non-empty contents in check between the
-            // index
-            // 'next_check_pos' and 'check' is greater than some constant value
-            // (e.g. 0.9),
-            // new 'next_check_pos' index is written by 'check'.
-            if (1.0 * nonzero_num / (pos - nextCheckPos + 1) >= 0.95)
-                nextCheckPos = pos; // 从位置 next_check_pos 开始到 pos 间，如果已占用的空间在95%以上，下次插入节点时，直接从 pos 位置处开始查找
-            used[begin] = true;
-
-            size = (size > begin + siblings.get(siblings.size() - 1).getKey() + 1) ? size : begin + siblings.get(siblings.size() - 1).getKey() + 1;
-
-            for (Map.Entry<Integer, State> sibling : siblings)
+            int[] codes = new int[siblings.size()];
+            for (int i = 0; i < codes.length; i++)
             {
-                check[begin + sibling.getKey()] = begin;
+                codes[i] = siblings.get(i).getKey();
             }
+            int begin = place(codes, codes.length);
 
             for (Map.Entry<Integer, State> sibling : siblings)
             {
@@ -981,18 +3014,110 @@ public class AhoCorasickDoubleArrayTrie<V> implements Serializable
             }
         }
 
+    }
+
+    /**
+     * A builder placing the sibling groups of an automaton again, hottest first, and moving its failure and output
+     * tables along
+     */
+    private class Relayout extends DoubleArrayBuilder
+    {
         /**
-         * free the unnecessary memory
+         * @param heat how often the sibling group of every state is probed
          */
-        private void loseWeight()
+        void relayout(long[] heat)
         {
-            int[] nbase = new int[size + 65535];
-            System.arraycopy(base, 0, nbase, 0, size);
-            base = nbase;
+            long start = System.nanoTime();
+            int[] oldBase = base, oldCheck = check, oldFail = fail;
+            int[] oldOffsets = outputOffsets, oldIds = outputIds;
+            int oldSize = size;
+
+            // 每个兄弟组按旧的begin归档，组内的编码按位置升序
+            int[] groupStart = new int[oldSize + 2];
+            int stateCount = 1; // 根节点
+            for (int p = 1; p < oldSize; ++p)
+            {
+                if (oldCheck[p] <= 0) continue;
+                ++groupStart[oldCheck[p] + 1];
+                if (oldCheck[p] != p) ++stateCount;
+            }
+            for (int b = 1; b < groupStart.length; ++b)
+            {
+                groupStart[b] += groupStart[b - 1];
+            }
+            int[] groupCodes = new int[groupStart[oldSize + 1]];
+            int[] cursor = Arrays.copyOf(groupStart, oldSize + 1);
+            long[] order = new long[stateCount];
+            int n = 0;
+            order[n++] = ((long) (Integer.MAX_VALUE - (int) Math.min(heat[0], Integer.MAX_VALUE)) << 32);
+            for (int p = 1; p < oldSize; ++p)
+            {
+                int b = oldCheck[p];
+                if (b <= 0) continue;
+                groupCodes[cursor[b]++] = p - b;
+                if (b != p)
+                    order[n++] = ((long) (Integer.MAX_VALUE - (int) Math.min(heat[p], Integer.MAX_VALUE)) << 32) | p;
+            }
+            // 热的组在前，冷的组保持原来的顺序
+            Arrays.sort(order);
 
-            int[] ncheck = new int[size + 65535];
-            System.arraycopy(check, 0, ncheck, 0, Math.min(check.length, ncheck.length));
-            check = ncheck;
+            alphabetSize = 0;
+            if (alphabet != null)
+            {
+                for (char code : alphabet)
+                {
+                    alphabetSize = Math.max(alphabetSize, code);
+                }
+            }
+            progress = 0;
+            keySize = stateCount;
+            size = 0;
+            resize(oldSize + 1);
+            nextCheckPos = 0;
+            int[] newBegin = new int[oldSize + 1]; // 旧begin -> 新begin
+            int[] codes = new int[Character.MAX_VALUE + 2];
+            for (long key : order)
+            {
+                int b = oldBase[(int) key];
+                int count = groupStart[b + 1] - groupStart[b];
+                System.arraycopy(groupCodes, groupStart[b], codes, 0, count);
+                newBegin[b] = place(codes, count);
+                ++progress;
+            }
+            used = null;
+
+            // 旧位置 -> 新位置，终止位置的base是词的下标，原样搬过去
+            int[] newPos = new int[oldSize];
+            base[0] = newBegin[oldBase[0]];
+            for (int p = 1; p < oldSize; ++p)
+            {
+                int b = oldCheck[p];
+                if (b <= 0) continue;
+                newPos[p] = newBegin[b] + p - b;
+                base[newPos[p]] = b == p ? oldBase[p] : newBegin[oldBase[p]];
+            }
+            loseWeight();
+
+            fail = new int[size + 1];
+            outputOffsets = new int[size + 2];
+            for (long key : order)
+            {
+                int s = (int) key;
+                fail[newPos[s]] = newPos[oldFail[s]];
+                outputOffsets[newPos[s] + 1] = oldOffsets[s + 1] - oldOffsets[s];
+            }
+            for (int i = 1; i < outputOffsets.length; ++i)
+            {
+                outputOffsets[i] += outputOffsets[i - 1];
+            }
+            outputIds = new int[oldIds.length];
+            for (long key : order)
+            {
+                int s = (int) key;
+                System.arraycopy(oldIds, oldOffsets[s], outputIds, outputOffsets[newPos[s]], oldOffsets[s + 1] - oldOffsets[s]);
+            }
+            report.doubleArrayNanos = System.nanoTime() - start;
+            finishReport(v.length);
         }
     }
 }
@@ -0,0 +1,294 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Optional settings of {@link AhoCorasickDoubleArrayTrie#build(java.util.Map, BuildOptions)}, the defaults produce
+ * exactly the same automaton as {@link AhoCorasickDoubleArrayTrie#build(java.util.Map)}
+ *
+ * @author hankcs
+ */
+public class BuildOptions
+{
+    /**
+     * states shallower than this depth get a full DFA row, 0 disables the DFA
+     */
+    private int dfaDepth;
+    /**
+     * whether to map the characters of keys to dense codes
+     */
+    private boolean compactAlphabet;
+    /**
+     * runs the parallel parts of the build, null to build in the calling thread
+     */
+    private ExecutorService executor;
+    /**
+     * whether to match regardless of case
+     */
+    private boolean ignoreCase;
+    /**
+     * whether to match full-width forms as their ASCII counterparts
+     */
+    private boolean foldWidth;
+    /**
+     * the initial number of slots of the double array
+     */
+    private int initialSize = 65536 * 32;
+    /**
+     * the smallest factor by which the double array grows
+     */
+    private double growthFactor = 1.05;
+    /**
+     * the occupied ratio of the scanned slots above which the search of free slots skips them for good
+     */
+    private double densityThreshold = 0.95;
+
+    /**
+     * @return states shallower than this depth get a full DFA row, 0 means no DFA
+     * @see #setDfaDepth(int)
+     */
+    public int getDfaDepth()
+    {
+        return dfaDepth;
+    }
+
+    /**
+     * Precompute a deterministic transition table for the states shallower than {@code depth}, so that every character
+     * read in these states costs exactly one lookup instead of walking the failure links.<br>
+     * The table takes (number of such states) * (number of distinct characters in keys) ints, 1 covers the root only,
+     * {@link Integer#MAX_VALUE} makes the whole automaton deterministic, which is affordable for small alphabets.
+     *
+     * @param depth the depth, 0 disables the DFA
+     * @return this
+     * @see AhoCorasickDoubleArrayTrie#buildDfa(int)
+     */
+    public BuildOptions setDfaDepth(int depth)
+    {
+        if (depth < 0) throw new IllegalArgumentException("depth must be non-negative: " + depth);
+        this.dfaDepth = depth;
+        return this;
+    }
+
+    /**
+     * @return whether to map the characters of keys to dense codes
+     * @see #setCompactAlphabet(boolean)
+     */
+    public boolean isCompactAlphabet()
+    {
+        return compactAlphabet;
+    }
+
+    /**
+     * Map the characters appearing in keys to dense codes ordered by frequency, and transit by these codes instead of
+     * raw UTF-16 units. The double array then spans the size of the alphabet instead of 65536, which saves a lot of
+     * memory and cache for CJK dictionaries, at the cost of one more table lookup per character.
+     *
+     * @param compactAlphabet true to compact
+     * @return this
+     */
+    public BuildOptions setCompactAlphabet(boolean compactAlphabet)
+    {
+        this.compactAlphabet = compactAlphabet;
+        return this;
+    }
+
+    /**
+     * @return the executor running the parallel parts of the build, null if the build is sequential
+     * @see #setExecutor(ExecutorService)
+     */
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Build in parallel with an executor, e.g. a ForkJoinPool or a fixed thread pool. The subtrees of different first
+     * chars are built concurrently, then the failure links are computed level by level, each level in parallel.
+     * Placing nodes into the double array stays sequential, so the result is identical to a sequential build.<br>
+     * The executor is not shut down by the build.
+     *
+     * @param executor the executor, null to build in the calling thread
+     * @return this
+     */
+    public BuildOptions setExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @return whether to match regardless of case
+     * @see #setIgnoreCase(boolean)
+     */
+    public boolean isIgnoreCase()
+    {
+        return ignoreCase;
+    }
+
+    /**
+     * Match regardless of case, as if both the keys and the text were converted by
+     * {@link Character#toLowerCase(char)}.<br>
+     * The keys are folded during the build, and the text is folded char by char through the same table which maps
+     * chars to codes, so the text is never copied, scanning costs the same as with {@link #setCompactAlphabet(boolean)},
+     * and the offsets of hits still refer to the original text. Keys which become equal after folding keep the value
+     * of the last one, and the sorted builds expect the keys to be in ascending order after folding.
+     *
+     * @param ignoreCase true to ignore case
+     * @return this
+     */
+    public BuildOptions setIgnoreCase(boolean ignoreCase)
+    {
+        this.ignoreCase = ignoreCase;
+        return this;
+    }
+
+    /**
+     * @return whether to match full-width forms as their ASCII counterparts
+     * @see #setFoldWidth(boolean)
+     */
+    public boolean isFoldWidth()
+    {
+        return foldWidth;
+    }
+
+    /**
+     * Match the full-width forms U+FF01 to U+FF5E as ASCII '!' to '~' and the ideographic space U+3000 as ' ', which
+     * is the part of NFKC that matters for mixed CJK and Latin text. It combines with {@link #setIgnoreCase(boolean)},
+     * e.g. '&#xFF21;' then matches 'a'. Folding is done the same way as described there.
+     *
+     * @param foldWidth true to fold the width
+     * @return this
+     */
+    public BuildOptions setFoldWidth(boolean foldWidth)
+    {
+        this.foldWidth = foldWidth;
+        return this;
+    }
+
+    /**
+     * @return the initial number of slots of the double array
+     * @see #setInitialSize(int)
+     */
+    public int getInitialSize()
+    {
+        return initialSize;
+    }
+
+    /**
+     * Set the initial number of slots of the double array, 2M by default. It only affects how often the array grows
+     * during the build, the placement and the result are the same for any value. A small dictionary builds faster with
+     * a small value, a number of slots close to the total length of the keys avoids growing.
+     *
+     * @param initialSize the number of slots, positive
+     * @return this
+     * @see AhoCorasickDoubleArrayTrie#getBuildReport()
+     */
+    public BuildOptions setInitialSize(int initialSize)
+    {
+        if (initialSize <= 0) throw new IllegalArgumentException("initialSize must be positive: " + initialSize);
+        this.initialSize = initialSize;
+        return this;
+    }
+
+    /**
+     * @return the smallest factor by which the double array grows
+     * @see #setGrowthFactor(double)
+     */
+    public double getGrowthFactor()
+    {
+        return growthFactor;
+    }
+
+    /**
+     * Set the smallest factor by which the double array grows when it is full, 1.05 by default. The array grows faster
+     * while few keys are placed, by the ratio of all keys to the placed ones. A larger factor grows less often at the
+     * cost of more unused slots during the build, the result is the same.
+     *
+     * @param growthFactor the factor, larger than 1
+     * @return this
+     */
+    public BuildOptions setGrowthFactor(double growthFactor)
+    {
+        if (!(growthFactor > 1)) throw new IllegalArgumentException("growthFactor must be larger than 1: " + growthFactor);
+        this.growthFactor = growthFactor;
+        return this;
+    }
+
+    /**
+     * @return the occupied ratio of the scanned slots above which the search of free slots skips them for good
+     * @see #setDensityThreshold(double)
+     */
+    public double getDensityThreshold()
+    {
+        return densityThreshold;
+    }
+
+    /**
+     * Tune the search of free slots, 0.95 by default. When the slots scanned to place a group of siblings are occupied
+     * above this ratio, later searches start after them. A lower threshold builds faster but leaves more holes, i.e.
+     * a larger and sparser double array, a threshold of 1 packs the array the densest at the cost of the longest search.
+     * Compare the fill ratio, probes and timings of {@link AhoCorasickDoubleArrayTrie#getBuildReport()}.
+     *
+     * @param densityThreshold the ratio in (0, 1]
+     * @return this
+     */
+    public BuildOptions setDensityThreshold(double densityThreshold)
+    {
+        if (!(densityThreshold > 0 && densityThreshold <= 1))
+            throw new IllegalArgumentException("densityThreshold must be in (0, 1]: " + densityThreshold);
+        this.densityThreshold = densityThreshold;
+        return this;
+    }
+
+    /**
+     * @return the folded form of every char, or null if no folding is enabled
+     */
+    char[] foldTable()
+    {
+        if (!ignoreCase && !foldWidth) return null;
+        char[] table = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c < table.length; ++c)
+        {
+            char folded = (char) c;
+            if (foldWidth)
+            {
+                if (folded >= '\uFF01' && folded <= '\uFF5E')
+                    folded = (char) (folded - '\uFF01' + '!');
+                else if (folded == '\u3000')
+                    folded = ' ';
+            }
+            if (ignoreCase)
+                folded = Character.toLowerCase(folded);
+            table[c] = folded;
+        }
+        // 保证折叠是幂等的，折叠过的词再折叠一次不变
+        for (int c = 0; c < table.length; ++c)
+        {
+            while (table[table[c]] != table[c])
+            {
+                table[c] = table[table[c]];
+            }
+        }
+        return table;
+    }
+}
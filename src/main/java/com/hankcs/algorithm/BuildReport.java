@@ -0,0 +1,139 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+/**
+ * Statistics of a build, to tune {@link BuildOptions} by comparing the build cost with the size of the double array
+ *
+ * @author hankcs
+ * @see AhoCorasickDoubleArrayTrie#getBuildReport()
+ */
+public class BuildReport
+{
+    int keyCount;
+    int slotCount;
+    int occupiedSlotCount;
+    long probeCount;
+    int resizeCount;
+    long peakArrayBytes;
+    long trieNanos;
+    long doubleArrayNanos;
+    long failureNanos;
+    long dfaNanos;
+
+    /**
+     * @return the amount of keys
+     */
+    public int getKeyCount()
+    {
+        return keyCount;
+    }
+
+    /**
+     * @return the number of slots of the double array, excluding the padding after the last occupied one
+     */
+    public int getSlotCount()
+    {
+        return slotCount;
+    }
+
+    /**
+     * @return the number of slots holding a state or the end of a key
+     */
+    public int getOccupiedSlotCount()
+    {
+        return occupiedSlotCount;
+    }
+
+    /**
+     * @return the ratio of occupied slots, the higher the smaller and more cache friendly the double array
+     */
+    public double getFillRatio()
+    {
+        return slotCount == 0 ? 0 : 1.0 * occupiedSlotCount / slotCount;
+    }
+
+    /**
+     * @return the number of slots visited while searching free slots for groups of siblings
+     */
+    public long getProbeCount()
+    {
+        return probeCount;
+    }
+
+    /**
+     * @return how many times the double array grew during the build
+     */
+    public int getResizeCount()
+    {
+        return resizeCount;
+    }
+
+    /**
+     * @return the bytes of the working arrays of the placement at their largest, not including the trie of
+     * {@link AhoCorasickDoubleArrayTrie#build(java.util.Map)} or the keys
+     */
+    public long getPeakArrayBytes()
+    {
+        return peakArrayBytes;
+    }
+
+    /**
+     * @return the nanoseconds spent preparing the keys: the alphabet, and the trie of State objects if built from a map
+     */
+    public long getTrieNanos()
+    {
+        return trieNanos;
+    }
+
+    /**
+     * @return the nanoseconds spent placing the nodes into the double array
+     */
+    public long getDoubleArrayNanos()
+    {
+        return doubleArrayNanos;
+    }
+
+    /**
+     * @return the nanoseconds spent computing the failure and output tables
+     */
+    public long getFailureNanos()
+    {
+        return failureNanos;
+    }
+
+    /**
+     * @return the nanoseconds spent building the DFA table, 0 if no DFA is built
+     */
+    public long getDfaNanos()
+    {
+        return dfaNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("keys=%d, slots=%d, occupied=%d, fill=%.3f, probes=%d, resizes=%d, peakArrayBytes=%d, " +
+                                     "trie=%.1fms, doubleArray=%.1fms, failure=%.1fms, dfa=%.1fms",
+                             keyCount, slotCount, occupiedSlotCount, getFillRatio(), probeCount, resizeCount,
+                             peakArrayBytes, trieNanos / 1e6, doubleArrayNanos / 1e6, failureNanos / 1e6, dfaNanos / 1e6);
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * An AhoCorasickDoubleArrayTrie whose transitions run over Unicode code points instead of UTF-16 units.<br>
+ * Every code point appearing in keys gets a dense code, the more frequent the smaller, and the automaton is built over
+ * these codes. So a supplementary character such as an emoji or a CJK Extension B ideograph is one transition instead
+ * of a path through two surrogates, and the double array spans the number of distinct code points rather than 65536.
+ * Offsets are still reported in UTF-16 units of the text. The text is expected to be well-formed, a lone surrogate is
+ * treated as a character of its own.
+ *
+ * @author hankcs
+ */
+public class CodePointAhoCorasickDoubleArrayTrie<V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the automaton built over keys whose chars are the codes of their code points
+     */
+    protected AhoCorasickDoubleArrayTrie<V> trie;
+    /**
+     * the code of every BMP char, 0 if it doesn't appear in any key
+     */
+    protected char[] bmp;
+    /**
+     * the codes of the supplementary code points, supplementary[high - 0xD800][low - 0xDC00] is the code of a
+     * surrogate pair, a block is null if no key has a code point of its high surrogate
+     */
+    protected char[][] supplementary;
+    /**
+     * the length of every key in UTF-16 units, the length in code points is kept by the automaton
+     */
+    protected int[] charLength;
+
+    /**
+     * Build from a map
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        build(map, new BuildOptions());
+    }
+
+    /**
+     * Build from a map
+     *
+     * @param map     a map containing key-value pairs
+     * @param options optional settings of the build, the alphabet is always compacted, and folding applies to the BMP
+     * @throws IllegalArgumentException if there are more than 65535 distinct code points in keys
+     */
+    public void build(Map<String, V> map, BuildOptions options)
+    {
+        char[] fold = options.foldTable();
+        // 统计每个码点的频次
+        int[] bmpFrequency = new int[Character.MAX_VALUE + 1];
+        Map<Integer, int[]> supplementaryFrequency = new HashMap<Integer, int[]>();
+        for (String key : map.keySet())
+        {
+            for (int i = 0; i < key.length(); )
+            {
+                int codePoint = codePointAt(key, i, fold);
+                if (codePoint > Character.MAX_VALUE)
+                {
+                    int[] frequency = supplementaryFrequency.get(codePoint);
+                    if (frequency == null)
+                        supplementaryFrequency.put(codePoint, frequency = new int[1]);
+                    ++frequency[0];
+                    i += 2;
+                }
+                else
+                {
+                    ++bmpFrequency[codePoint];
+                    ++i;
+                }
+            }
+        }
+        // 按频次从高到低编码
+        List<long[]> order = new ArrayList<long[]>();
+        for (int c = 0; c < bmpFrequency.length; ++c)
+        {
+            if (bmpFrequency[c] > 0) order.add(new long[]{bmpFrequency[c], c});
+        }
+        for (Map.Entry<Integer, int[]> entry : supplementaryFrequency.entrySet())
+        {
+            order.add(new long[]{entry.getValue()[0], entry.getKey()});
+        }
+        if (order.size() > Character.MAX_VALUE)
+            throw new IllegalArgumentException("There are " + order.size() + " distinct code points in keys, more than " + (int) Character.MAX_VALUE);
+        Collections.sort(order, new Comparator<long[]>()
+        {
+            @Override
+            public int compare(long[] o1, long[] o2)
+            {
+                if (o1[0] != o2[0]) return o1[0] > o2[0] ? -1 : 1;
+                return o1[1] < o2[1] ? -1 : (o1[1] == o2[1] ? 0 : 1);
+            }
+        });
+        char[] bmp = new char[Character.MAX_VALUE + 1];
+        char[][] supplementary = new char[1024][];
+        boolean[] twoUnits = new boolean[order.size() + 1];
+        for (int i = 0; i < order.size(); ++i)
+        {
+            int codePoint = (int) order.get(i)[1];
+            char code = (char) (i + 1);
+            if (codePoint > Character.MAX_VALUE)
+            {
+                int high = (codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT) >>> 10;
+                if (supplementary[high] == null) supplementary[high] = new char[1024];
+                supplementary[high][codePoint & 0x3FF] = code;
+                twoUnits[code] = true;
+            }
+            else
+            {
+                bmp[codePoint] = code;
+            }
+        }
+
+        // 将每个词转为码点的编码
+        Map<String, V> codeMap = new LinkedHashMap<String, V>(map.size() * 4 / 3 + 1);
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, V> entry : map.entrySet())
+        {
+            String key = entry.getKey();
+            sb.setLength(0);
+            for (int i = 0; i < key.length(); )
+            {
+                int codePoint = codePointAt(key, i, fold);
+                sb.append(code(bmp, supplementary, codePoint));
+                i += Character.charCount(codePoint);
+            }
+            codeMap.put(sb.toString(), entry.getValue());
+        }
+        int[] charLength = new int[codeMap.size()];
+        int k = 0;
+        for (String codes : codeMap.keySet())
+        {
+            for (int i = 0; i < codes.length(); ++i)
+            {
+                charLength[k] += twoUnits[codes.charAt(i)] ? 2 : 1;
+            }
+            ++k;
+        }
+        // 编码已经是稠密的，内部的自动机不再压缩字母表，也不再折叠
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(codeMap, new BuildOptions().setDfaDepth(options.getDfaDepth()).setExecutor(options.getExecutor())
+                .setInitialSize(options.getInitialSize()).setGrowthFactor(options.getGrowthFactor())
+                .setDensityThreshold(options.getDensityThreshold()));
+        if (fold != null)
+        {
+            char[] folded = new char[bmp.length];
+            for (int c = 0; c < bmp.length; ++c)
+            {
+                folded[c] = bmp[fold[c]];
+            }
+            bmp = folded;
+        }
+        this.trie = trie;
+        this.bmp = bmp;
+        this.supplementary = supplementary;
+        this.charLength = charLength;
+    }
+
+    /**
+     * the code point at an index of a key, folded if it is in the BMP
+     */
+    private static int codePointAt(String key, int index, char[] fold)
+    {
+        int codePoint = key.codePointAt(index);
+        if (fold != null && codePoint <= Character.MAX_VALUE) codePoint = fold[codePoint];
+        return codePoint;
+    }
+
+    /**
+     * the code of a code point, 0 if it doesn't appear in any key
+     */
+    private static char code(char[] bmp, char[][] supplementary, int codePoint)
+    {
+        if (codePoint <= Character.MAX_VALUE) return bmp[codePoint];
+        char[] block = supplementary[(codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT) >>> 10];
+        return block == null ? 0 : block[codePoint & 0x3FF];
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text The text
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text)
+    {
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(text, new IHit<V>()
+        {
+            @Override
+            public void hit(int begin, int end, V value)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output, begin and end are indexes of text in UTF-16 units
+     */
+    public void parseText(CharSequence text, IHit<V> processor)
+    {
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        final char[] bmp = this.bmp;
+        int currentState = 0;
+        for (int i = 0, length = text.length(); i < length; )
+        {
+            char c = text.charAt(i++);
+            char code;
+            if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(text.charAt(i)))
+            {
+                // 一对代理是一个码点，只转移一次
+                char[] block = supplementary[c - Character.MIN_HIGH_SURROGATE];
+                char low = text.charAt(i++);
+                code = block == null ? 0 : block[low - Character.MIN_LOW_SURROGATE];
+            }
+            else
+            {
+                code = bmp[c];
+            }
+            currentState = trie.getState(currentState, code);
+            for (int o = trie.outputOffsets[currentState], e = trie.outputOffsets[currentState + 1]; o < e; ++o)
+            {
+                int hit = trie.outputIds[o];
+                processor.hit(i - charLength[hit], i, trie.v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Checks that string contains at least one substring
+     *
+     * @param text source text to check
+     * @return {@code true} if string contains at least one substring
+     */
+    public boolean matches(CharSequence text)
+    {
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        final char[] bmp = this.bmp;
+        int currentState = 0;
+        for (int i = 0, length = text.length(); i < length; )
+        {
+            char c = text.charAt(i++);
+            char code;
+            if (Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(text.charAt(i)))
+            {
+                char[] block = supplementary[c - Character.MIN_HIGH_SURROGATE];
+                char low = text.charAt(i++);
+                code = block == null ? 0 : block[low - Character.MIN_LOW_SURROGATE];
+            }
+            else
+            {
+                code = bmp[c];
+            }
+            currentState = trie.getState(currentState, code);
+            if (trie.outputOffsets[currentState] != trie.outputOffsets[currentState + 1])
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * encode a key into the codes of its code points, a code point absent from every key becomes 0
+     */
+    private String toCodeString(CharSequence key)
+    {
+        StringBuilder sb = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); )
+        {
+            int codePoint = Character.codePointAt(key, i);
+            sb.append(code(bmp, supplementary, codePoint));
+            i += Character.charCount(codePoint);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get value by a key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(CharSequence key)
+    {
+        return trie.get(toCodeString(key));
+    }
+
+    /**
+     * match exactly by a key
+     *
+     * @param key the key
+     * @return the index of the key, you can use it as a perfect hash function
+     */
+    public int exactMatchSearch(CharSequence key)
+    {
+        return trie.exactMatchSearch(toCodeString(key));
+    }
+
+    /**
+     * @return the size of the keywords
+     */
+    public int size()
+    {
+        return trie.size();
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only AhoCorasickDoubleArrayTrie in a compact layout, taking about a third less memory than the arrays of
+ * {@link AhoCorasickDoubleArrayTrie} at about the same throughput, see {@link #memorySize()}.<br>
+ * <ul>
+ * <li>check is replaced by the label of the slot as a char: code + 1 for a transition, 0xFFFF for the end of a key, 0
+ * for an empty slot. Every state has its own base, so the label alone tells whether a slot belongs to a state.</li>
+ * <li>fail is only stored for the slots holding states, in the order of the slots, and found by the rank of the slot
+ * in a bit set of the states.</li>
+ * <li>the output offsets are only stored for the states with outputs, found the same way.</li>
+ * </ul>
+ * Keys containing U+FFFE or U+FFFF are only supported with {@link BuildOptions#setCompactAlphabet(boolean)}.
+ *
+ * @author hankcs
+ */
+public class CompactAhoCorasickDoubleArrayTrie<V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the label of a slot holding the end of a key
+     */
+    private static final char TERMINAL = '\uFFFF';
+
+    /**
+     * base array of the Double Array Trie structure, a slot holding the end of a key stores -index-1
+     */
+    protected int[] base;
+    /**
+     * the label of every slot, padded so that any transition stays in bounds
+     */
+    protected char[] label;
+    /**
+     * the code of every character
+     */
+    protected char[] alphabet;
+    /**
+     * bit p is set if slot p holds a state
+     */
+    protected long[] stateBits;
+    /**
+     * the number of states before every word of stateBits
+     */
+    protected int[] stateRanks;
+    /**
+     * the failure of every state, in the order of slots
+     */
+    protected int[] fail;
+    /**
+     * bit p is set if the state at slot p has outputs
+     */
+    protected long[] outputBits;
+    /**
+     * the number of states with outputs before every word of outputBits
+     */
+    protected int[] outputRanks;
+    /**
+     * the outputs of the i-th state with outputs are outputIds[outputOffsets[i] ... outputOffsets[i + 1])
+     */
+    protected int[] outputOffsets;
+    /**
+     * the key indexes of all outputs, grouped by state
+     */
+    protected int[] outputIds;
+    /**
+     * outer value array
+     */
+    protected V[] v;
+    /**
+     * the length of every key
+     */
+    protected int[] l;
+
+    /**
+     * Build from a map
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        build(map, new BuildOptions());
+    }
+
+    /**
+     * Build from a map
+     *
+     * @param map     a map containing key-value pairs
+     * @param options optional settings of the build, the DFA is not used by the compact layout
+     */
+    public void build(Map<String, V> map, BuildOptions options)
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(map, new BuildOptions().setCompactAlphabet(options.isCompactAlphabet())
+                .setIgnoreCase(options.isIgnoreCase()).setFoldWidth(options.isFoldWidth())
+                .setInitialSize(options.getInitialSize()).setGrowthFactor(options.getGrowthFactor())
+                .setDensityThreshold(options.getDensityThreshold()).setExecutor(options.getExecutor()));
+        build(trie);
+    }
+
+    /**
+     * Convert a built automaton into the compact layout, the automaton is left untouched and the values are shared
+     *
+     * @param trie a built automaton
+     * @throws IllegalArgumentException if a key contains U+FFFE or U+FFFF and the alphabet is not compacted
+     */
+    public void build(AhoCorasickDoubleArrayTrie<V> trie)
+    {
+        int size = Math.max(trie.size, 1); // 空的自动机也保留根节点
+        int[] check = trie.check;
+        char[] alphabet = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c < alphabet.length; ++c)
+        {
+            alphabet[c] = trie.alphabet == null ? (char) c : trie.alphabet[c];
+            // 编码0xFFFE不在任何词中，改为0xFFFF，加1后不会与任何标签相等
+            if (alphabet[c] == '\uFFFE') alphabet[c] = '\uFFFF';
+        }
+        int maxCode = 0;
+        for (char code : alphabet)
+        {
+            maxCode = Math.max(maxCode, code);
+        }
+
+        char[] label = new char[size + maxCode + 2];
+        long[] stateBits = new long[(size >>> 6) + 1];
+        long[] outputBits = new long[(size >>> 6) + 1];
+        int stateCount = 0, outputStateCount = 0;
+        for (int p = 0; p < size; ++p)
+        {
+            int parentBase = check[p];
+            if (p != 0 && parentBase <= 0) continue; // 空位
+            if (p != 0 && parentBase == p)
+            {
+                label[p] = TERMINAL;
+                continue;
+            }
+            if (p != 0)
+            {
+                if (p - parentBase >= TERMINAL)
+                    throw new IllegalArgumentException("Keys containing U+FFFE or U+FFFF need a compacted alphabet");
+                label[p] = (char) (p - parentBase);
+            }
+            stateBits[p >>> 6] |= 1L << p;
+            ++stateCount;
+            if (trie.outputOffsets[p] != trie.outputOffsets[p + 1])
+            {
+                outputBits[p >>> 6] |= 1L << p;
+                ++outputStateCount;
+            }
+        }
+
+        int[] fail = new int[stateCount];
+        int[] outputOffsets = new int[outputStateCount + 1];
+        int[] outputIds = new int[trie.outputIds.length];
+        int s = 0, o = 0;
+        for (int p = 0; p < size; ++p)
+        {
+            if ((stateBits[p >>> 6] & (1L << p)) == 0) continue;
+            fail[s++] = trie.fail[p];
+            if ((outputBits[p >>> 6] & (1L << p)) == 0) continue;
+            int begin = trie.outputOffsets[p], end = trie.outputOffsets[p + 1];
+            System.arraycopy(trie.outputIds, begin, outputIds, outputOffsets[o], end - begin);
+            outputOffsets[o + 1] = outputOffsets[o] + end - begin;
+            ++o;
+        }
+
+        this.base = new int[size];
+        System.arraycopy(trie.base, 0, this.base, 0, size);
+        this.label = label;
+        this.alphabet = alphabet;
+        this.stateBits = stateBits;
+        this.stateRanks = ranks(stateBits);
+        this.fail = fail;
+        this.outputBits = outputBits;
+        this.outputRanks = ranks(outputBits);
+        this.outputOffsets = outputOffsets;
+        this.outputIds = outputIds;
+        this.v = trie.v;
+        this.l = trie.l;
+    }
+
+    /**
+     * count the set bits before every word
+     */
+    private static int[] ranks(long[] bits)
+    {
+        int[] ranks = new int[bits.length];
+        int rank = 0;
+        for (int i = 0; i < bits.length; ++i)
+        {
+            ranks[i] = rank;
+            rank += Long.bitCount(bits[i]);
+        }
+        return ranks;
+    }
+
+    /**
+     * the number of set bits before bit p
+     */
+    private static int rank(long[] bits, int[] ranks, int p)
+    {
+        return ranks[p >>> 6] + Long.bitCount(bits[p >>> 6] & ((1L << p) - 1));
+    }
+
+    /**
+     * transmit state, supports failure function
+     *
+     * @param currentState the state
+     * @param character    the character
+     * @return the next state
+     */
+    protected int getState(int currentState, char character)
+    {
+        int code = alphabet[character] + 1;
+        while (true)
+        {
+            int p = base[currentState] + code;
+            if (label[p] == code) return p;
+            if (currentState == 0) return 0;
+            currentState = fail[rank(stateBits, stateRanks, currentState)];
+        }
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text The text
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text)
+    {
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(text, new IHit<V>()
+        {
+            @Override
+            public void hit(int begin, int end, V value)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(CharSequence text, IHit<V> processor)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            if ((outputBits[currentState >>> 6] & (1L << currentState)) == 0) continue;
+            int r = rank(outputBits, outputRanks, currentState);
+            for (int o = outputOffsets[r], end = outputOffsets[r + 1]; o < end; ++o)
+            {
+                int hit = outputIds[o];
+                processor.hit(i + 1 - l[hit], i + 1, v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Parse text into a reusable buffer, allocating nothing unless the buffer has to grow
+     *
+     * @param text The text
+     * @param hits the buffer to append the hits to, it is not cleared
+     */
+    public void parseText(CharSequence text, HitBuffer hits)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            if ((outputBits[currentState >>> 6] & (1L << currentState)) == 0) continue;
+            int r = rank(outputBits, outputRanks, currentState);
+            for (int o = outputOffsets[r], end = outputOffsets[r + 1]; o < end; ++o)
+            {
+                int hit = outputIds[o];
+                hits.add(i + 1 - l[hit], i + 1, hit);
+            }
+        }
+    }
+
+    /**
+     * Checks that string contains at least one substring
+     *
+     * @param text source text to check
+     * @return {@code true} if string contains at least one substring
+     */
+    public boolean matches(CharSequence text)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            if ((outputBits[currentState >>> 6] & (1L << currentState)) != 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * match exactly by a key
+     *
+     * @param key the key
+     * @return the index of the key, you can use it as a perfect hash function
+     */
+    public int exactMatchSearch(CharSequence key)
+    {
+        int b = base[0];
+        for (int i = 0; i < key.length(); ++i)
+        {
+            int code = alphabet[key.charAt(i)] + 1;
+            int p = b + code;
+            if (label[p] != code) return -1;
+            b = base[p];
+        }
+        if (label[b] != TERMINAL) return -1; // 经过'\0'转移到词尾
+        return -base[b] - 1;
+    }
+
+    /**
+     * Get value by a key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(CharSequence key)
+    {
+        int index = exactMatchSearch(key);
+        return index < 0 ? null : v[index];
+    }
+
+    /**
+     * @return the size of the keywords
+     */
+    public int size()
+    {
+        return v.length;
+    }
+
+    /**
+     * @return the bytes taken by the arrays of the automaton, excluding the values
+     */
+    public long memorySize()
+    {
+        return 4L * (base.length + stateRanks.length + fail.length + outputRanks.length + outputOffsets.length + outputIds.length + l.length)
+                + 2L * (label.length + alphabet.length) + 8L * (stateBits.length + outputBits.length);
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHitLong;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Scans a file through memory mappings for {@link AhoCorasickDoubleArrayTrie#parseFile(File, Charset, IHitLong)},
+ * feeding the automaton straight from the mapped bytes and reporting the hits by byte positions in the file
+ *
+ * @author hankcs
+ */
+class FileParser<V>
+{
+    /**
+     * the default size of the regions scanned in parallel
+     */
+    static final long REGION_SIZE = 1 << 26;
+    /**
+     * the most bytes mapped at once
+     */
+    private static final int WINDOW = 1 << 30;
+    /**
+     * how the bytes are decoded
+     */
+    private static final int UTF_8 = 0, US_ASCII = 1, ISO_8859_1 = 2, OTHER = 3;
+    /**
+     * U+FFFD of 1 byte, in the form returned by {@link #decodeUtf8(ByteBuffer, int, int)}
+     */
+    private static final int MALFORMED = 0xFFFD << 3 | 1;
+
+    private final AhoCorasickDoubleArrayTrie<V> trie;
+    /**
+     * the processor of the hits, or null if they are kept in {@link #hits}
+     */
+    private final IHitLong<V> processor;
+    /**
+     * the hits kept for a region
+     */
+    private final RegionHits hits;
+    /**
+     * only the hits whose last char starts at or after this byte are reported
+     */
+    private final long begin;
+    /**
+     * the byte position of the last chars, enough for the longest key
+     */
+    private final long[] starts;
+    private final int mask;
+    /**
+     * the state after the chars fed so far
+     */
+    private int state;
+    /**
+     * the amount of chars fed so far
+     */
+    private long count;
+
+    private FileParser(AhoCorasickDoubleArrayTrie<V> trie, long begin, IHitLong<V> processor, RegionHits hits)
+    {
+        this.trie = trie;
+        this.begin = begin;
+        this.processor = processor;
+        this.hits = hits;
+        int capacity = Integer.highestOneBit(Math.max(1, trie.maxKeyLength()) * 2 - 1);
+        starts = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * scan a whole file in the calling thread
+     */
+    static <V> void parse(AhoCorasickDoubleArrayTrie<V> trie, File file, Charset charset, IHitLong<V> processor) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            FileParser<V> parser = new FileParser<V>(trie, 0, processor, null);
+            int kind = kindOf(charset);
+            if (kind == OTHER)
+                parser.decode(channel, charset);
+            else
+                parser.scan(channel, kind, 0, channel.size());
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * scan a file by regions in parallel, the processor is called in the calling thread in the order of the file
+     */
+    static <V> void parse(final AhoCorasickDoubleArrayTrie<V> trie, File file, Charset charset, long regionSize,
+                          ExecutorService executor, IHitLong<V> processor) throws IOException
+    {
+        if (regionSize <= 0) throw new IllegalArgumentException("Illegal region size " + regionSize);
+        final int kind = kindOf(charset);
+        if (kind == OTHER)
+        {
+            // 无法从任意位置开始解码，只能顺序扫描
+            parse(trie, file, charset, processor);
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        List<Future<RegionHits>> futures = new ArrayList<Future<RegionHits>>();
+        try
+        {
+            final FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            // 往前多扫描最长的词长 - 1个字符，UTF-8的一个字符最多3个字节（增补字符是4个字节2个char）
+            long overlap = (long) Math.max(0, trie.maxKeyLength() - 1) * (kind == UTF_8 ? 3 : 1) + (kind == UTF_8 ? 3 : 0);
+            long regionBegin = 0;
+            while (regionBegin < size)
+            {
+                final long from = align(channel, kind, Math.max(0, regionBegin - overlap));
+                final long begin = regionBegin;
+                final long to = align(channel, kind, Math.min(size, regionBegin + regionSize));
+                futures.add(executor.submit(new Callable<RegionHits>()
+                {
+                    @Override
+                    public RegionHits call() throws IOException
+                    {
+                        RegionHits hits = new RegionHits();
+                        new FileParser<V>(trie, begin, null, hits).scan(channel, kind, from, to);
+                        return hits;
+                    }
+                }));
+                regionBegin = to;
+            }
+            // 按顺序合并各区域的结果，每个区域处理完即可释放
+            for (int i = 0; i < futures.size(); ++i)
+            {
+                RegionHits hits = await(futures.get(i));
+                futures.set(i, null);
+                for (int j = 0; j < hits.size; ++j)
+                {
+                    processor.hit(hits.begins[j], hits.ends[j], trie.v[hits.ids[j]]);
+                }
+            }
+        }
+        finally
+        {
+            for (Future<RegionHits> future : futures)
+            {
+                if (future != null) future.cancel(true);
+            }
+            raf.close();
+        }
+    }
+
+    private static int kindOf(Charset charset)
+    {
+        String name = charset.name();
+        if (name.equals("UTF-8")) return UTF_8;
+        if (name.equals("US-ASCII")) return US_ASCII;
+        if (name.equals("ISO-8859-1")) return ISO_8859_1;
+        return OTHER;
+    }
+
+    /**
+     * move a position forward to the beginning of a char, i.e. past at most 3 continuation bytes of UTF-8
+     */
+    private static long align(FileChannel channel, int kind, long position) throws IOException
+    {
+        if (kind != UTF_8) return position;
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        channel.read(buffer, position);
+        for (int i = 0; i < buffer.position(); ++i)
+        {
+            if ((buffer.get(i) & 0xC0) != 0x80) return position + i;
+        }
+        return position + buffer.position();
+    }
+
+    /**
+     * feed the chars starting in [from, to) of the file, decoded inline from the mapped bytes
+     */
+    private void scan(FileChannel channel, int kind, long from, long to) throws IOException
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        int[] outputOffsets = trie.outputOffsets;
+        long[] starts = this.starts;
+        int state = this.state;
+        long count = this.count;
+        long size = channel.size();
+        long position = from;
+        while (position < to)
+        {
+            long stop = Math.min(to, position + WINDOW);
+            long windowEnd = Math.min(size, stop + 3); // 跨过stop的最后一个字符也在映射之内
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+            int limit = (int) (windowEnd - position);
+            int end = (int) (stop - position);
+            int i = 0;
+            while (i < end)
+            {
+                int b = in.get(i);
+                int cp, n;
+                if (b >= 0)
+                {
+                    cp = b;
+                    n = 1;
+                }
+                else if (kind == UTF_8)
+                {
+                    int decoded = decodeUtf8(in, i, limit);
+                    cp = decoded >>> 3;
+                    n = decoded & 7;
+                }
+                else
+                {
+                    cp = kind == US_ASCII ? 0xFFFD : b & 0xFF;
+                    n = 1;
+                }
+                long charBegin = position + i;
+                i += n;
+                char c = (char) cp;
+                if (cp >= 0x10000)
+                {
+                    // 高位代理，与低位代理共用整个字节序列
+                    state = trie.getState(state, (char) (0xD7C0 + (cp >>> 10)));
+                    starts[(int) (count++ & mask)] = charBegin;
+                    if (charBegin >= begin && outputOffsets[state] != outputOffsets[state + 1])
+                        report(state, count, position + i);
+                    c = (char) (0xDC00 | (cp & 0x3FF));
+                }
+                state = trie.getState(state, c);
+                starts[(int) (count++ & mask)] = charBegin;
+                if (charBegin >= begin && outputOffsets[state] != outputOffsets[state + 1])
+                    report(state, count, position + i);
+            }
+            position += i;
+        }
+        this.state = state;
+        this.count = count;
+    }
+
+    /**
+     * decode the UTF-8 sequence at i
+     *
+     * @return the code point &lt;&lt; 3 | the amount of its bytes, or {@link #MALFORMED} for a byte which doesn't start
+     * a complete and well-formed sequence
+     */
+    private static int decodeUtf8(ByteBuffer in, int i, int limit)
+    {
+        int b = in.get(i) & 0xFF;
+        if (b < 0x80) return b << 3 | 1;
+        int n, cp, min;
+        if (b >= 0xC2 && b < 0xE0)
+        {
+            n = 2;
+            cp = b & 0x1F;
+            min = 0x80;
+        }
+        else if (b >= 0xE0 && b < 0xF0)
+        {
+            n = 3;
+            cp = b & 0x0F;
+            min = 0x800;
+        }
+        else if (b >= 0xF0 && b < 0xF5)
+        {
+            n = 4;
+            cp = b & 0x07;
+            min = 0x10000;
+        }
+        else
+            return MALFORMED;
+        if (i + n > limit) return MALFORMED;
+        for (int k = 1; k < n; ++k)
+        {
+            int c = in.get(i + k) & 0xFF;
+            if ((c & 0xC0) != 0x80) return MALFORMED;
+            cp = cp << 6 | (c & 0x3F);
+        }
+        if (cp < min || cp > Character.MAX_CODE_POINT || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE))
+            return MALFORMED;
+        return cp << 3 | n;
+    }
+
+    /**
+     * feed a whole file through a decoder, one char at a time so that the byte position of every char is known
+     */
+    private void decode(FileChannel channel, Charset charset) throws IOException
+    {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.allocate(2);
+        long size = channel.size();
+        long position = 0;
+        while (true)
+        {
+            long windowEnd = Math.min(size, position + WINDOW);
+            boolean last = windowEnd == size;
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+            while (true)
+            {
+                int before = in.position();
+                out.clear();
+                out.limit(1);
+                CoderResult result = decoder.decode(in, out, last);
+                if (result.isOverflow() && out.position() == 0)
+                {
+                    out.limit(2); // 代理对要一次解出两个char
+                    result = decoder.decode(in, out, last);
+                }
+                for (int k = 0; k < out.position(); ++k)
+                {
+                    feed(out.get(k), position + before, position + in.position());
+                }
+                if (result.isUnderflow() && out.position() == 0) break;
+            }
+            // 窗口末尾不完整的字节留给下一个窗口
+            position += in.position();
+            if (last) break;
+        }
+        out.clear();
+        decoder.flush(out);
+        for (int k = 0; k < out.position(); ++k)
+        {
+            feed(out.get(k), size, size);
+        }
+    }
+
+    /**
+     * feed a char to the automaton and report the hits ending with it
+     *
+     * @param c         the char
+     * @param charBegin the byte position of the char
+     * @param charEnd   the byte position after the char
+     */
+    private void feed(char c, long charBegin, long charEnd)
+    {
+        state = trie.getState(state, c);
+        starts[(int) (count++ & mask)] = charBegin;
+        if (charBegin >= begin) report(state, count, charEnd);
+    }
+
+    /**
+     * report the hits of a state
+     *
+     * @param state   the state after the char
+     * @param count   the amount of chars fed, including the char
+     * @param charEnd the byte position after the char
+     */
+    private void report(int state, long count, long charEnd)
+    {
+        int[] outputOffsets = trie.outputOffsets, outputIds = trie.outputIds, l = trie.l;
+        for (int o = outputOffsets[state], end = outputOffsets[state + 1]; o < end; ++o)
+        {
+            int hit = outputIds[o];
+            long hitBegin = starts[(int) ((count - l[hit]) & mask)];
+            if (processor != null)
+                processor.hit(hitBegin, charEnd, trie.v[hit]);
+            else
+                hits.add(hitBegin, charEnd, hit);
+        }
+    }
+
+    /**
+     * wait for a region, rethrowing its failure
+     */
+    private static RegionHits await(Future<RegionHits> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting", e);
+        }
+    }
+
+    /**
+     * The hits of a region, as byte positions and key indexes
+     */
+    private static class RegionHits
+    {
+        long[] begins = new long[16];
+        long[] ends = new long[16];
+        int[] ids = new int[16];
+        int size;
+
+        void add(long begin, long end, int id)
+        {
+            if (size == ids.length)
+            {
+                begins = Arrays.copyOf(begins, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            begins[size] = begin;
+            ends[size] = end;
+            ids[size] = id;
+            ++size;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of hits held in primitive arrays, filled by
+ * {@link AhoCorasickDoubleArrayTrie#parseText(CharSequence, HitBuffer)}. Once it has grown to the size of the typical
+ * result, scanning into it allocates nothing. Call {@link #clear()} before reusing it for another text.
+ *
+ * @author hankcs
+ */
+public class HitBuffer
+{
+    /**
+     * the beginning index of every hit, inclusive
+     */
+    private int[] begins;
+    /**
+     * the ending index of every hit, exclusive
+     */
+    private int[] ends;
+    /**
+     * the index of the key of every hit, see {@link AhoCorasickDoubleArrayTrie#get(int)}
+     */
+    private int[] keyIds;
+    /**
+     * the amount of hits
+     */
+    private int size;
+
+    public HitBuffer()
+    {
+        this(16);
+    }
+
+    /**
+     * @param capacity the initial capacity
+     */
+    public HitBuffer(int capacity)
+    {
+        if (capacity < 1) throw new IllegalArgumentException("Illegal capacity " + capacity);
+        begins = new int[capacity];
+        ends = new int[capacity];
+        keyIds = new int[capacity];
+    }
+
+    /**
+     * append a hit, growing the arrays if they are full
+     */
+    void add(int begin, int end, int keyId)
+    {
+        if (size == begins.length)
+        {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, size * 2L);
+            begins = Arrays.copyOf(begins, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            keyIds = Arrays.copyOf(keyIds, capacity);
+        }
+        begins[size] = begin;
+        ends[size] = end;
+        keyIds[size] = keyId;
+        ++size;
+    }
+
+    /**
+     * Remove all hits and keep the arrays for reuse
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * @return the amount of hits
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param i the index of a hit
+     * @return the beginning index of the hit, inclusive
+     */
+    public int begin(int i)
+    {
+        checkIndex(i);
+        return begins[i];
+    }
+
+    /**
+     * @param i the index of a hit
+     * @return the ending index of the hit, exclusive
+     */
+    public int end(int i)
+    {
+        checkIndex(i);
+        return ends[i];
+    }
+
+    /**
+     * @param i the index of a hit
+     * @return the index of the key, use {@link AhoCorasickDoubleArrayTrie#get(int)} to get its value
+     */
+    public int keyId(int i)
+    {
+        checkIndex(i);
+        return keyIds[i];
+    }
+
+    private void checkIndex(int i)
+    {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; ++i)
+        {
+            if (i > 0) sb.append(", ");
+            sb.append('[').append(begins[i]).append(':').append(ends[i]).append("]=").append(keyIds[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
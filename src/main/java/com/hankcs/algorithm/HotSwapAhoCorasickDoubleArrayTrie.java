@@ -0,0 +1,188 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A holder replacing the automaton atomically under concurrent readers.<br>
+ * {@link AhoCorasickDoubleArrayTrie#build(Map)} and {@link AhoCorasickDoubleArrayTrie#load(ObjectInputStream)} modify
+ * the instance in place, so they must never run on an automaton being scanned. This holder builds or loads a new
+ * instance aside, then publishes it with a single atomic write. Readers never block, and every read sees either the old
+ * or the new automaton as a whole, never a half-built one.
+ * <p>
+ * An automaton handed to the holder must not be modified afterwards. A reader which makes several calls and needs them
+ * to agree should take one snapshot by {@link #get()} and call it.
+ * </p>
+ *
+ * @author hankcs
+ */
+public class HotSwapAhoCorasickDoubleArrayTrie<V>
+{
+    /**
+     * the published automaton
+     */
+    private final AtomicReference<AhoCorasickDoubleArrayTrie<V>> current;
+
+    /**
+     * @param trie the initial automaton, already built
+     */
+    public HotSwapAhoCorasickDoubleArrayTrie(AhoCorasickDoubleArrayTrie<V> trie)
+    {
+        if (trie == null) throw new IllegalArgumentException("The automaton is null");
+        current = new AtomicReference<AhoCorasickDoubleArrayTrie<V>>(trie);
+    }
+
+    /**
+     * @return the current automaton, which stays valid and unchanged even after being replaced
+     */
+    public AhoCorasickDoubleArrayTrie<V> get()
+    {
+        return current.get();
+    }
+
+    /**
+     * Publish an automaton, the readers pick it up at their next call
+     *
+     * @param trie a built automaton, must not be modified afterwards
+     * @return the replaced automaton
+     */
+    public AhoCorasickDoubleArrayTrie<V> swap(AhoCorasickDoubleArrayTrie<V> trie)
+    {
+        if (trie == null) throw new IllegalArgumentException("The automaton is null");
+        return current.getAndSet(trie);
+    }
+
+    /**
+     * Build a new automaton in the calling thread, then publish it
+     *
+     * @param map     a map containing key-value pairs
+     * @param options optional settings of the build
+     * @return the replaced automaton
+     */
+    public AhoCorasickDoubleArrayTrie<V> rebuild(Map<String, V> map, BuildOptions options)
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(map, options);
+        return swap(trie);
+    }
+
+    /**
+     * Build a new automaton with an executor, then publish it. The map must not be modified until the returned future
+     * completes.
+     *
+     * @param map      a map containing key-value pairs
+     * @param options  optional settings of the build
+     * @param executor runs the build
+     * @return a future of the replaced automaton
+     */
+    public Future<AhoCorasickDoubleArrayTrie<V>> rebuild(final Map<String, V> map, final BuildOptions options, ExecutorService executor)
+    {
+        return executor.submit(new Callable<AhoCorasickDoubleArrayTrie<V>>()
+        {
+            @Override
+            public AhoCorasickDoubleArrayTrie<V> call()
+            {
+                return rebuild(map, options);
+            }
+        });
+    }
+
+    /**
+     * Load a new automaton in the calling thread, then publish it
+     *
+     * @param in An ObjectInputStream object
+     * @return the replaced automaton
+     * @throws IOException            If can't read the file from path
+     * @throws ClassNotFoundException If the class doesn't exist or matched
+     */
+    public AhoCorasickDoubleArrayTrie<V> reload(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.load(in);
+        return swap(trie);
+    }
+
+    /**
+     * Parse text with the current automaton
+     *
+     * @param text The text
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text)
+    {
+        return current.get().parseText(text);
+    }
+
+    /**
+     * Parse text with the current automaton
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(CharSequence text, IHit<V> processor)
+    {
+        current.get().parseText(text, processor);
+    }
+
+    /**
+     * Checks that string contains at least one substring, with the current automaton
+     *
+     * @param text source text to check
+     * @return {@code true} if string contains at least one substring
+     */
+    public boolean matches(CharSequence text)
+    {
+        return current.get().matches(text);
+    }
+
+    /**
+     * Search first match in string, with the current automaton
+     *
+     * @param text source text to check
+     * @return first match or {@code null} if there are no matches
+     */
+    public Hit<V> findFirst(CharSequence text)
+    {
+        return current.get().findFirst(text);
+    }
+
+    /**
+     * Get value by a key with the current automaton
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(CharSequence key)
+    {
+        return current.get().get(key);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.util.*;
+
+/**
+ * An AhoCorasickDoubleArrayTrie supporting additions and deletions of keys after the build, without rebuilding the
+ * whole dictionary.<br>
+ * It scans a large base automaton and a small overlay automaton side by side. Deleting a key of the base marks its
+ * index in a bit set which filters its hits, adding a key rebuilds only the overlay from the added keys. So the cost of
+ * an update is proportional to the amount of changes since the last {@link #compact()}, which merges the overlay into
+ * a new base and should be called once in a while, e.g. when {@link #overlaySize()} grows large.
+ * <p>
+ * Call {@link #build(Map)} first, the other methods throw an {@link IllegalStateException} before it.
+ * Updates are not thread safe, synchronize externally if it is read while being updated.
+ * </p>
+ *
+ * @author hankcs
+ */
+public class IncrementalAhoCorasickDoubleArrayTrie<V>
+{
+    /**
+     * the overlay is small, starting with a small double array makes its rebuilds several times faster
+     */
+    private static final BuildOptions OVERLAY_OPTIONS = new BuildOptions().setInitialSize(1024);
+
+    /**
+     * the automaton of the keys at the last compaction
+     */
+    protected AhoCorasickDoubleArrayTrie<V> base;
+    /**
+     * the keys of base in ascending order, the index of a key is its index in base
+     */
+    protected String[] baseKeys;
+    /**
+     * the indexes of the keys of base which were deleted or overridden by the overlay
+     */
+    protected BitSet deleted;
+    /**
+     * the keys added since the last compaction
+     */
+    protected TreeMap<String, V> added;
+    /**
+     * the automaton of added, null if nothing is added
+     */
+    protected AhoCorasickDoubleArrayTrie<V> overlay;
+
+    /**
+     * Build from a map
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        TreeMap<String, V> sorted = map instanceof TreeMap && ((TreeMap<String, V>) map).comparator() == null ?
+                (TreeMap<String, V>) map : new TreeMap<String, V>(map);
+        reset(sorted.keySet().toArray(new String[0]), sorted.values());
+    }
+
+    /**
+     * build the base from sorted keys and values, dropping the overlay
+     */
+    @SuppressWarnings("unchecked")
+    private void reset(String[] keys, Collection<V> values)
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(keys, (V[]) values.toArray());
+        base = trie;
+        baseKeys = keys;
+        deleted = new BitSet(keys.length);
+        added = new TreeMap<String, V>();
+        overlay = null;
+    }
+
+    /**
+     * Add a key or replace its value
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    public void put(String key, V value)
+    {
+        checkBuilt();
+        int index = base.exactMatchSearch(key);
+        if (index >= 0) deleted.set(index);
+        added.put(key, value);
+        rebuildOverlay();
+    }
+
+    /**
+     * Delete a key
+     *
+     * @param key the key
+     * @return whether the key existed
+     */
+    public boolean remove(String key)
+    {
+        checkBuilt();
+        boolean removed = false;
+        if (added.containsKey(key))
+        {
+            added.remove(key);
+            rebuildOverlay();
+            removed = true;
+        }
+        int index = base.exactMatchSearch(key);
+        if (index >= 0 && !deleted.get(index))
+        {
+            deleted.set(index);
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Merge the overlay and the deletions into a new base, which takes a full build
+     */
+    public void compact()
+    {
+        checkBuilt();
+        List<String> keys = new ArrayList<String>(baseKeys.length - deleted.cardinality() + added.size());
+        List<V> values = new ArrayList<V>(baseKeys.length - deleted.cardinality() + added.size());
+        Iterator<Map.Entry<String, V>> iterator = added.entrySet().iterator();
+        Map.Entry<String, V> next = iterator.hasNext() ? iterator.next() : null;
+        // 归并两组有序的词
+        for (int i = 0; i < baseKeys.length; ++i)
+        {
+            if (deleted.get(i)) continue;
+            while (next != null && next.getKey().compareTo(baseKeys[i]) < 0)
+            {
+                keys.add(next.getKey());
+                values.add(next.getValue());
+                next = iterator.hasNext() ? iterator.next() : null;
+            }
+            keys.add(baseKeys[i]);
+            values.add(base.get(i));
+        }
+        while (next != null)
+        {
+            keys.add(next.getKey());
+            values.add(next.getValue());
+            next = iterator.hasNext() ? iterator.next() : null;
+        }
+        reset(keys.toArray(new String[0]), values);
+    }
+
+    /**
+     * the base and the overlay exist only after the first build
+     */
+    private void checkBuilt()
+    {
+        if (base == null) throw new IllegalStateException("build must be called first");
+    }
+
+    private void rebuildOverlay()
+    {
+        if (added.isEmpty())
+        {
+            overlay = null;
+            return;
+        }
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(added, OVERLAY_OPTIONS);
+        overlay = trie;
+    }
+
+    /**
+     * @return the amount of keys added since the last compaction
+     */
+    public int overlaySize()
+    {
+        checkBuilt();
+        return added.size();
+    }
+
+    /**
+     * @return the amount of keys
+     */
+    public int size()
+    {
+        checkBuilt();
+        return baseKeys.length - deleted.cardinality() + added.size();
+    }
+
+    /**
+     * Get value by a key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(String key)
+    {
+        checkBuilt();
+        if (overlay != null)
+        {
+            int index = overlay.exactMatchSearch(key);
+            if (index >= 0) return overlay.get(index);
+        }
+        int index = base.exactMatchSearch(key);
+        if (index >= 0 && !deleted.get(index)) return base.get(index);
+        return null;
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text The text
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text)
+    {
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(text, new IHit<V>()
+        {
+            @Override
+            public void hit(int begin, int end, V value)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
+    }
+
+    /**
+     * Parse text, the hits ending at the same position come from the base first, then from the overlay
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(CharSequence text, IHit<V> processor)
+    {
+        checkBuilt();
+        AhoCorasickDoubleArrayTrie<V> base = this.base, overlay = this.overlay;
+        int baseState = 0, overlayState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            baseState = base.getState(baseState, c);
+            for (int o = base.outputOffsets[baseState], end = base.outputOffsets[baseState + 1]; o < end; ++o)
+            {
+                int hit = base.outputIds[o];
+                if (deleted.get(hit)) continue;
+                processor.hit(i + 1 - base.l[hit], i + 1, base.v[hit]);
+            }
+            if (overlay == null) continue;
+            overlayState = overlay.getState(overlayState, c);
+            for (int o = overlay.outputOffsets[overlayState], end = overlay.outputOffsets[overlayState + 1]; o < end; ++o)
+            {
+                int hit = overlay.outputIds[o];
+                processor.hit(i + 1 - overlay.l[hit], i + 1, overlay.v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Checks that string contains at least one substring
+     *
+     * @param text source text to check
+     * @return {@code true} if string contains at least one substring
+     */
+    public boolean matches(CharSequence text)
+    {
+        checkBuilt();
+        AhoCorasickDoubleArrayTrie<V> base = this.base, overlay = this.overlay;
+        int baseState = 0, overlayState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            baseState = base.getState(baseState, c);
+            for (int o = base.outputOffsets[baseState], end = base.outputOffsets[baseState + 1]; o < end; ++o)
+            {
+                if (!deleted.get(base.outputIds[o])) return true;
+            }
+            if (overlay == null) continue;
+            overlayState = overlay.getState(overlayState, c);
+            if (overlay.outputOffsets[overlayState] != overlay.outputOffsets[overlayState + 1]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only AhoCorasickDoubleArrayTrie whose base, check, fail and output of a slot are interleaved into one record
+ * of 4 ints, instead of the parallel arrays of {@link AhoCorasickDoubleArrayTrie}. A transition reads the check and
+ * the base of the next state from the same record, the failure and the outputs of a state are next to its base, so a
+ * character touches one cache line of the double array instead of up to three. The memory is about the same as the
+ * parallel arrays.<br>
+ * The states are the indexes of their records, i.e. 4 times their slots, and base, check and fail store such indexes
+ * too, so that no multiplication is needed while scanning. The DFA table is not used by this layout.
+ *
+ * @author hankcs
+ */
+public class InterleavedAhoCorasickDoubleArrayTrie<V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the ints of a record
+     */
+    private static final int STRIDE = 4;
+    /**
+     * the offsets of the fields in a record
+     */
+    private static final int CHECK = 1, FAIL = 2, OUTPUT = 3;
+
+    /**
+     * the records of all slots, padded so that any transition stays in bounds:
+     * <ul>
+     * <li>base: the record index of the first child, -index-1 for the end of a key</li>
+     * <li>check: the base of the parent, 0 for an empty slot</li>
+     * <li>fail: the record index of the failure state</li>
+     * <li>output: the start of the outputs in outputIds, -1 if none</li>
+     * </ul>
+     */
+    protected int[] record;
+    /**
+     * the key indexes of the outputs of every state, each list terminated by -1
+     */
+    protected int[] outputIds;
+    /**
+     * the code of every character, null if the characters are their own codes
+     */
+    protected char[] alphabet;
+    /**
+     * outer value array
+     */
+    protected V[] v;
+    /**
+     * the length of every key
+     */
+    protected int[] l;
+
+    /**
+     * Build from a map
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        build(map, new BuildOptions());
+    }
+
+    /**
+     * Build from a map
+     *
+     * @param map     a map containing key-value pairs
+     * @param options optional settings of the build, the DFA is not used by the interleaved layout
+     */
+    public void build(Map<String, V> map, BuildOptions options)
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(map, new BuildOptions().setCompactAlphabet(options.isCompactAlphabet())
+                .setIgnoreCase(options.isIgnoreCase()).setFoldWidth(options.isFoldWidth())
+                .setInitialSize(options.getInitialSize()).setGrowthFactor(options.getGrowthFactor())
+                .setDensityThreshold(options.getDensityThreshold()).setExecutor(options.getExecutor()));
+        build(trie);
+    }
+
+    /**
+     * Convert a built automaton into the interleaved layout, the automaton is left untouched and the values are shared
+     *
+     * @param trie a built automaton, relaid out by {@link AhoCorasickDoubleArrayTrie#relayout(CharSequence...)} or not
+     * @throws IllegalArgumentException if the double array has too many slots to be indexed by ints 4 times
+     */
+    public void build(AhoCorasickDoubleArrayTrie<V> trie)
+    {
+        int size = Math.max(trie.size, 1);
+        int maxCode = Character.MAX_VALUE;
+        if (trie.alphabet != null)
+        {
+            maxCode = 0;
+            for (char code : trie.alphabet)
+            {
+                maxCode = Math.max(maxCode, code);
+            }
+        }
+        long slots = (long) size + maxCode + 2; // 任何状态按任何编码转移都不越界
+        if (slots > (Integer.MAX_VALUE - 8) / STRIDE)
+            throw new IllegalArgumentException("The double array is too big to be interleaved: " + slots + " slots");
+        int[] record = new int[(int) slots * STRIDE];
+        int[] outputOffsets = trie.outputOffsets;
+        int outputStateCount = 0;
+        for (int p = 0; p < size; ++p)
+        {
+            if (isState(trie, p) && outputOffsets[p] != outputOffsets[p + 1]) ++outputStateCount;
+        }
+        int[] outputIds = new int[trie.outputIds.length + outputStateCount];
+        int o = 0;
+        for (int p = 0; p < size; ++p)
+        {
+            int r = p * STRIDE;
+            int b = trie.base[p];
+            int c = trie.check[p];
+            record[r + CHECK] = c > 0 ? c * STRIDE : 0;
+            record[r + OUTPUT] = -1;
+            if (!isState(trie, p))
+            {
+                record[r] = b; // 空位或词尾，词尾的base是词的下标
+                continue;
+            }
+            record[r] = Math.max(b, 1) * STRIDE; // 空自动机的根没有子节点，base为0会与空位的check相等
+            record[r + FAIL] = trie.fail[p] * STRIDE;
+            int begin = outputOffsets[p], end = outputOffsets[p + 1];
+            if (begin == end) continue;
+            record[r + OUTPUT] = o;
+            System.arraycopy(trie.outputIds, begin, outputIds, o, end - begin);
+            o += end - begin;
+            outputIds[o++] = -1;
+        }
+
+        this.record = record;
+        this.outputIds = outputIds;
+        this.alphabet = trie.alphabet;
+        this.v = trie.v;
+        this.l = trie.l;
+    }
+
+    /**
+     * @return whether slot p of the automaton holds a state
+     */
+    private static boolean isState(AhoCorasickDoubleArrayTrie<?> trie, int p)
+    {
+        return p == 0 || (trie.check[p] > 0 && trie.check[p] != p);
+    }
+
+    /**
+     * transmit state, supports failure function
+     *
+     * @param currentState the record index of the state
+     * @param character    the character
+     * @return the record index of the next state
+     */
+    protected int getState(int currentState, char character)
+    {
+        int code = ((alphabet == null ? character : alphabet[character]) + 1) * STRIDE;
+        int[] record = this.record;
+        while (true)
+        {
+            int b = record[currentState];
+            int next = b + code;
+            if (record[next + CHECK] == b) return next;
+            if (currentState == 0) return 0;
+            currentState = record[currentState + FAIL];
+        }
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text The text
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text)
+    {
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(text, new IHit<V>()
+        {
+            @Override
+            public void hit(int begin, int end, V value)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(CharSequence text, IHit<V> processor)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            int o = record[currentState + OUTPUT];
+            if (o < 0) continue;
+            for (int hit = outputIds[o]; hit >= 0; hit = outputIds[++o])
+            {
+                processor.hit(i + 1 - l[hit], i + 1, v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Parse text into a reusable buffer, allocating nothing unless the buffer has to grow
+     *
+     * @param text The text
+     * @param hits the buffer to append the hits to, it is not cleared
+     */
+    public void parseText(CharSequence text, HitBuffer hits)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            int o = record[currentState + OUTPUT];
+            if (o < 0) continue;
+            for (int hit = outputIds[o]; hit >= 0; hit = outputIds[++o])
+            {
+                hits.add(i + 1 - l[hit], i + 1, hit);
+            }
+        }
+    }
+
+    /**
+     * Checks that string contains at least one substring
+     *
+     * @param text source text to check
+     * @return {@code true} if string contains at least one substring
+     */
+    public boolean matches(CharSequence text)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            if (record[currentState + OUTPUT] >= 0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * match exactly by a key
+     *
+     * @param key the key
+     * @return the index of the key, you can use it as a perfect hash function
+     */
+    public int exactMatchSearch(CharSequence key)
+    {
+        int b = record[0];
+        for (int i = 0; i < key.length(); ++i)
+        {
+            char c = key.charAt(i);
+            int next = b + ((alphabet == null ? c : alphabet[c]) + 1) * STRIDE;
+            if (record[next + CHECK] != b) return -1;
+            b = record[next];
+        }
+        if (record[b + CHECK] != b) return -1; // 经过'\0'转移到词尾
+        return -record[b] - 1;
+    }
+
+    /**
+     * Get value by a key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(CharSequence key)
+    {
+        int index = exactMatchSearch(key);
+        return index < 0 ? null : v[index];
+    }
+
+    /**
+     * @return the size of the keywords
+     */
+    public int size()
+    {
+        return v.length;
+    }
+
+    /**
+     * @return the bytes taken by the arrays of the automaton, excluding the values
+     */
+    public long memorySize()
+    {
+        return 4L * (record.length + outputIds.length + l.length) + (alphabet == null ? 0 : 2L * alphabet.length);
+    }
+}
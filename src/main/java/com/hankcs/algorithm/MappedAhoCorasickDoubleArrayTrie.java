@@ -0,0 +1,469 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHitFull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only AhoCorasickDoubleArrayTrie backed by the flat binary layout written by
+ * {@link AhoCorasickDoubleArrayTrie#saveBinary(java.io.OutputStream)}.<br>
+ * Opening a file maps it into memory instead of deserializing it, so startup costs nearly nothing and
+ * several JVMs on one host share the same pages of the OS page cache.
+ * <p>
+ * The layout is a sequence of little endian ints:
+ * <pre>
+ * magic, version, sectionCount, (offset, length) * sectionCount, sections...
+ * </pre>
+ * with offsets and lengths counted in ints. The sections are base, check, fail, outputOffsets, outputIds, l and
+ * alphabet, where the outputs of state s are outputIds[outputOffsets[s] ... outputOffsets[s + 1]), and alphabet holds
+ * the chars of {@link AhoCorasickDoubleArrayTrie#alphabet} in pairs, or nothing if the alphabet wasn't compacted.
+ * </p>
+ * <p>
+ * Besides files, {@link #offHeap(AhoCorasickDoubleArrayTrie)} copies a built automaton into a direct buffer, keeping
+ * large automata out of the Java heap so that the garbage collector never scans or copies them.
+ * </p>
+ *
+ * @author hankcs
+ */
+public class MappedAhoCorasickDoubleArrayTrie<V>
+{
+    /**
+     * "ACDA" in ASCII
+     */
+    static final int MAGIC = 0x41434441;
+    /**
+     * the version of the binary layout
+     */
+    static final int VERSION = 2;
+
+    private static final int BASE = 0;
+    private static final int CHECK = 1;
+    private static final int FAIL = 2;
+    private static final int OUTPUT_OFFSETS = 3;
+    private static final int OUTPUT_IDS = 4;
+    private static final int LENGTH = 5;
+    private static final int ALPHABET = 6;
+    /**
+     * the sections every version has, version 1 has no alphabet
+     */
+    private static final int SECTION_COUNT = 6;
+
+    /**
+     * check array of the Double Array Trie structure
+     */
+    protected final IntBuffer check;
+    /**
+     * base array of the Double Array Trie structure
+     */
+    protected final IntBuffer base;
+    /**
+     * fail table of the Aho Corasick automata
+     */
+    protected final IntBuffer fail;
+    /**
+     * the outputs of state s start from outputOffsets[s]
+     */
+    protected final IntBuffer outputOffsets;
+    /**
+     * the key indexes of all outputs
+     */
+    protected final IntBuffer outputIds;
+    /**
+     * the length of every key
+     */
+    protected final IntBuffer l;
+    /**
+     * the code of every character in the compacted alphabet, null if the raw characters are used as codes
+     */
+    protected final CharBuffer alphabet;
+    /**
+     * outer value array, null if values were not provided
+     */
+    protected final V[] v;
+
+    /**
+     * Wrap a buffer holding the binary layout
+     *
+     * @param buffer the buffer, its position marks the beginning of the layout
+     * @param values the values in index order, can be null
+     * @throws IOException if the buffer doesn't hold a valid layout
+     */
+    public MappedAhoCorasickDoubleArrayTrie(ByteBuffer buffer, V[] values) throws IOException
+    {
+        IntBuffer ints = slice(buffer, 0, buffer.remaining() / 4);
+        if (ints.limit() < 3 || ints.get(0) != MAGIC)
+            throw new IOException("Not an AhoCorasickDoubleArrayTrie binary file");
+        if (ints.get(1) > VERSION)
+            throw new IOException("Unsupported binary version " + ints.get(1) + ", the latest known is " + VERSION);
+        if (ints.get(2) < SECTION_COUNT || 3 + ints.get(2) * 2L > ints.limit())
+            throw new IOException("Corrupted binary file, expect " + SECTION_COUNT + " sections but found " + ints.get(2));
+        IntBuffer[] sections = new IntBuffer[ints.get(2)];
+        for (int i = 0; i < sections.length; ++i)
+        {
+            int offset = ints.get(3 + i * 2);
+            int length = ints.get(4 + i * 2);
+            if (offset < 0 || length < 0 || (long) offset + length > ints.limit())
+                throw new IOException("Corrupted binary file, section " + i + " is out of bounds");
+            sections[i] = slice(buffer, offset, length);
+        }
+        base = sections[BASE];
+        check = sections[CHECK];
+        fail = sections[FAIL];
+        outputOffsets = sections[OUTPUT_OFFSETS];
+        outputIds = sections[OUTPUT_IDS];
+        l = sections[LENGTH];
+        if (ints.get(2) > ALPHABET && ints.get(4 + ALPHABET * 2) > 0)
+        {
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(buffer.position() + ints.get(3 + ALPHABET * 2) * 4);
+            duplicate.limit(duplicate.position() + ints.get(4 + ALPHABET * 2) * 4);
+            alphabet = duplicate.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+        }
+        else
+        {
+            alphabet = null;
+        }
+        if (values != null && values.length != l.limit())
+            throw new IllegalArgumentException("Expect " + l.limit() + " values but got " + values.length);
+        v = values;
+    }
+
+    /**
+     * Map a file written by {@link AhoCorasickDoubleArrayTrie#saveBinary(java.io.OutputStream)} into memory
+     *
+     * @param file   the file
+     * @param values the values in index order, can be null
+     * @param <V>    the value type
+     * @return a read-only automaton
+     * @throws IOException If can't map the file
+     */
+    public static <V> MappedAhoCorasickDoubleArrayTrie<V> open(File file, V[] values) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            return new MappedAhoCorasickDoubleArrayTrie<V>(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), values);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Copy an automaton into a direct buffer outside the Java heap, after which the on-heap automaton can be dropped.
+     * The DFA table of the automaton is not copied.
+     *
+     * @param trie the automaton
+     * @param <V>  the value type
+     * @return a read-only automaton sharing the values of trie
+     * @throws IllegalArgumentException if the automaton is larger than 2GB
+     */
+    public static <V> MappedAhoCorasickDoubleArrayTrie<V> offHeap(AhoCorasickDoubleArrayTrie<V> trie)
+    {
+        long size = trie.binarySize();
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The automaton takes " + size + " bytes, which exceeds a direct buffer");
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        trie.saveBinary(buffer);
+        buffer.flip();
+        try
+        {
+            return new MappedAhoCorasickDoubleArrayTrie<V>(buffer, trie.v);
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("The layout just written is invalid", e);
+        }
+    }
+
+    /**
+     * view a range (in ints) of the layout as an IntBuffer
+     */
+    private static IntBuffer slice(ByteBuffer buffer, int offset, int length)
+    {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(buffer.position() + offset * 4);
+        duplicate.limit(duplicate.position() + length * 4);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text The text
+     * @return a list of outputs
+     */
+    public List<Hit<V>> parseText(CharSequence text)
+    {
+        int position = 1;
+        int currentState = 0;
+        List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            for (int o = outputOffsets.get(currentState), end = outputOffsets.get(currentState + 1); o < end; ++o)
+            {
+                int hit = outputIds.get(o);
+                collectedEmits.add(new Hit<V>(position - l.get(hit), position, value(hit)));
+            }
+            ++position;
+        }
+
+        return collectedEmits;
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(CharSequence text, IHit<V> processor)
+    {
+        int position = 1;
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            for (int o = outputOffsets.get(currentState), end = outputOffsets.get(currentState + 1); o < end; ++o)
+            {
+                int hit = outputIds.get(o);
+                processor.hit(position - l.get(hit), position, value(hit));
+            }
+            ++position;
+        }
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(char[] text, IHit<V> processor)
+    {
+        int position = 1;
+        int currentState = 0;
+        for (char c : text)
+        {
+            currentState = getState(currentState, c);
+            for (int o = outputOffsets.get(currentState), end = outputOffsets.get(currentState + 1); o < end; ++o)
+            {
+                int hit = outputIds.get(o);
+                processor.hit(position - l.get(hit), position, value(hit));
+            }
+            ++position;
+        }
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The text
+     * @param processor A processor which handles the output
+     */
+    public void parseText(char[] text, IHitFull<V> processor)
+    {
+        int position = 1;
+        int currentState = 0;
+        for (char c : text)
+        {
+            currentState = getState(currentState, c);
+            for (int o = outputOffsets.get(currentState), end = outputOffsets.get(currentState + 1); o < end; ++o)
+            {
+                int hit = outputIds.get(o);
+                processor.hit(position - l.get(hit), position, value(hit), hit);
+            }
+            ++position;
+        }
+    }
+
+    /**
+     * Checks that string contains at least one substring
+     *
+     * @param text source text to check
+     * @return {@code true} if string contains at least one substring
+     */
+    public boolean matches(CharSequence text)
+    {
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            if (outputOffsets.get(currentState) != outputOffsets.get(currentState + 1))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Search first match in string
+     *
+     * @param text source text to check
+     * @return first match or {@code null} if there are no matches
+     */
+    public Hit<V> findFirst(CharSequence text)
+    {
+        int position = 1;
+        int currentState = 0;
+        for (int i = 0; i < text.length(); ++i)
+        {
+            currentState = getState(currentState, text.charAt(i));
+            int o = outputOffsets.get(currentState);
+            if (o != outputOffsets.get(currentState + 1))
+            {
+                int hitIndex = outputIds.get(o);
+                return new Hit<V>(position - l.get(hitIndex), position, value(hitIndex));
+            }
+            ++position;
+        }
+        return null;
+    }
+
+    /**
+     * Get value by a String key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(CharSequence key)
+    {
+        int index = exactMatchSearch(key);
+        if (index >= 0)
+        {
+            return value(index);
+        }
+
+        return null;
+    }
+
+    /**
+     * Pick the value by index in value array
+     *
+     * @param index The index
+     * @return The value, null if values were not provided
+     */
+    public V get(int index)
+    {
+        return value(index);
+    }
+
+    /**
+     * match exactly by a key
+     *
+     * @param key the key
+     * @return the index of the key, you can use it as a perfect hash function
+     */
+    public int exactMatchSearch(CharSequence key)
+    {
+        int b = base.get(0);
+        int p;
+
+        for (int i = 0; i < key.length(); i++)
+        {
+            p = b + (int) (alphabet == null ? key.charAt(i) : alphabet.get(key.charAt(i))) + 1;
+            if (b == check.get(p))
+                b = base.get(p);
+            else
+                return -1;
+        }
+
+        p = b; // transition through '\0' to check if it's the end of a word
+        int n = base.get(p);
+        if (b == check.get(p)) // yes, it is.
+        {
+            return -n - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the size of the keywords
+     */
+    public int size()
+    {
+        return l.limit();
+    }
+
+    private V value(int index)
+    {
+        return v == null ? null : v[index];
+    }
+
+    /**
+     * transmit state, supports failure function
+     *
+     * @param currentState
+     * @param character
+     * @return
+     */
+    private int getState(int currentState, char character)
+    {
+        if (alphabet != null) character = alphabet.get(character);
+        int newCurrentState = transitionWithRoot(currentState, character);  // 先按success跳转
+        while (newCurrentState == -1) // 跳转失败的话，按failure跳转
+        {
+            currentState = fail.get(currentState);
+            newCurrentState = transitionWithRoot(currentState, character);
+        }
+        return newCurrentState;
+    }
+
+    /**
+     * transition of a state, if the state is root and it failed, then returns the root
+     *
+     * @param nodePos
+     * @param c
+     * @return
+     */
+    protected int transitionWithRoot(int nodePos, char c)
+    {
+        int b = base.get(nodePos);
+        int p;
+
+        p = b + c + 1;
+        if (b != check.get(p))
+        {
+            if (nodePos == 0) return 0;
+            return -1;
+        }
+
+        return p;
+    }
+}
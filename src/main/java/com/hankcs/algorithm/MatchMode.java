@@ -0,0 +1,50 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+/**
+ * How {@link AhoCorasickDoubleArrayTrie#parseText(CharSequence, MatchMode, AhoCorasickDoubleArrayTrie.IHitFull)}
+ * selects non-overlapping matches among all the overlapping ones
+ *
+ * @author hankcs
+ */
+public enum MatchMode
+{
+    /**
+     * Every match, overlapping ones included, the same as {@link AhoCorasickDoubleArrayTrie#parseText(CharSequence)}
+     */
+    ALL,
+    /**
+     * The match beginning leftmost, the longest one if several begin there, then continue after its end. This is the
+     * usual semantics of tokenization by a dictionary.
+     */
+    LEFTMOST_LONGEST,
+    /**
+     * The match beginning leftmost, the one with the smallest index (i.e. the first in the dictionary) if several
+     * begin there, then continue after its end
+     */
+    LEFTMOST_FIRST,
+    /**
+     * The match ending first, the longest one if several end there, then continue after its end. It needs no look
+     * ahead so it is the cheapest.
+     */
+    NON_OVERLAPPING,
+}
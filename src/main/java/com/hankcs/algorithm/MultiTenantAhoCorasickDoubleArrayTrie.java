@@ -0,0 +1,224 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One automaton shared by many tenants whose dictionaries overlap.<br>
+ * The automaton is built over the union of all the dictionaries, and every tenant owns a bit set over the key indexes
+ * (the indexes of {@link AhoCorasickDoubleArrayTrie#get(int)}) telling which keys belong to it. Scanning for a tenant
+ * reports its own keys only. So the double array is stored once for the union, and a tenant costs one bit per key of
+ * the union.
+ * <p>
+ * Adding or changing tenants is not thread safe, synchronize externally if it is scanned meanwhile.
+ * </p>
+ *
+ * @author hankcs
+ */
+public class MultiTenantAhoCorasickDoubleArrayTrie<V>
+{
+    /**
+     * the automaton of the union
+     */
+    protected AhoCorasickDoubleArrayTrie<V> trie;
+    /**
+     * the key masks of the tenants, bit i of a mask is set if key i belongs to the tenant
+     */
+    protected long[][] masks;
+    /**
+     * the amount of tenants
+     */
+    protected int tenantSize;
+
+    /**
+     * Build the shared automaton from the union of all the dictionaries, dropping every tenant
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(map);
+        this.trie = trie;
+        masks = new long[16][];
+        tenantSize = 0;
+    }
+
+    /**
+     * Add a tenant
+     *
+     * @param keys the keys of the tenant, every one must be in the shared automaton
+     * @return the id of the tenant, ids are given in ascending order from 0
+     */
+    public int addTenant(Collection<? extends CharSequence> keys)
+    {
+        long[] mask = toMask(keys);
+        if (tenantSize == masks.length)
+        {
+            long[][] masks = new long[tenantSize * 2][];
+            System.arraycopy(this.masks, 0, masks, 0, tenantSize);
+            this.masks = masks;
+        }
+        masks[tenantSize] = mask;
+        return tenantSize++;
+    }
+
+    /**
+     * Replace the keys of a tenant
+     *
+     * @param tenant the id of the tenant
+     * @param keys   the keys of the tenant, every one must be in the shared automaton
+     */
+    public void setTenant(int tenant, Collection<? extends CharSequence> keys)
+    {
+        checkTenant(tenant);
+        masks[tenant] = toMask(keys);
+    }
+
+    private long[] toMask(Collection<? extends CharSequence> keys)
+    {
+        long[] mask = new long[(trie.size() + 63) >>> 6];
+        for (CharSequence key : keys)
+        {
+            int index = trie.exactMatchSearch(key);
+            if (index < 0)
+                throw new IllegalArgumentException("The key is not in the shared automaton: " + key);
+            mask[index >>> 6] |= 1L << index;
+        }
+        return mask;
+    }
+
+    private long[] checkTenant(int tenant)
+    {
+        if (tenant < 0 || tenant >= tenantSize)
+            throw new IllegalArgumentException("No such tenant: " + tenant);
+        return masks[tenant];
+    }
+
+    /**
+     * @return the amount of tenants
+     */
+    public int tenantSize()
+    {
+        return tenantSize;
+    }
+
+    /**
+     * @param tenant the id of the tenant
+     * @return the amount of keys of the tenant
+     */
+    public int size(int tenant)
+    {
+        int size = 0;
+        for (long word : checkTenant(tenant))
+        {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * @return the automaton of the union
+     */
+    public AhoCorasickDoubleArrayTrie<V> getTrie()
+    {
+        return trie;
+    }
+
+    /**
+     * Get value by a key of a tenant
+     *
+     * @param tenant the id of the tenant
+     * @param key    The key
+     * @return value if the key belongs to the tenant otherwise it return null
+     */
+    public V get(int tenant, CharSequence key)
+    {
+        long[] mask = checkTenant(tenant);
+        int index = trie.exactMatchSearch(key);
+        if (index < 0 || (mask[index >>> 6] & (1L << index)) == 0) return null;
+        return trie.get(index);
+    }
+
+    /**
+     * Parse text for a tenant
+     *
+     * @param tenant the id of the tenant
+     * @param text   The text
+     * @return a list of outputs of the tenant
+     */
+    public List<Hit<V>> parseText(int tenant, CharSequence text)
+    {
+        final List<Hit<V>> collectedEmits = new ArrayList<Hit<V>>();
+        parseText(tenant, text, new IHit<V>()
+        {
+            @Override
+            public void hit(int begin, int end, V value)
+            {
+                collectedEmits.add(new Hit<V>(begin, end, value));
+            }
+        });
+        return collectedEmits;
+    }
+
+    /**
+     * Parse text for a tenant
+     *
+     * @param tenant    the id of the tenant
+     * @param text      The text
+     * @param processor A processor which handles the outputs of the tenant
+     */
+    public void parseText(int tenant, CharSequence text, IHit<V> processor)
+    {
+        trie.parseText(text, checkTenant(tenant), processor);
+    }
+
+    /**
+     * Parse text for a tenant into a reusable buffer
+     *
+     * @param tenant the id of the tenant
+     * @param text   The text
+     * @param hits   the buffer to append the hits of the tenant to, it is not cleared
+     */
+    public void parseText(int tenant, CharSequence text, HitBuffer hits)
+    {
+        trie.parseText(text, checkTenant(tenant), hits);
+    }
+
+    /**
+     * Checks that string contains at least one key of a tenant
+     *
+     * @param tenant the id of the tenant
+     * @param text   source text to check
+     * @return {@code true} if string contains at least one key of the tenant
+     */
+    public boolean matches(int tenant, CharSequence text)
+    {
+        return trie.matches(text, checkTenant(tenant));
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * AhoCorasickDoubleArrayTrie Project
+ *      https://github.com/hankcs/AhoCorasickDoubleArrayTrie
+ *
+ * Copyright 2008-2016 hankcs <me@hankcs.com>
+ * You may modify and redistribute as long as this attribution remains.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hankcs.algorithm;
+
+import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.IHit;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An AhoCorasickDoubleArrayTrie whose transitions run over UTF-8 bytes, so that encoded text can be scanned without
+ * decoding it to a String first.<br>
+ * UTF-8 is self-synchronizing, thus a byte level match is always a match of whole characters. Offsets are reported in
+ * bytes, and optionally in chars of the decoded text through {@link IHitUtf8}, which assumes well-formed input.
+ *
+ * @author hankcs
+ */
+public class Utf8AhoCorasickDoubleArrayTrie<V> implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * the automaton built over keys whose chars are the bytes of UTF-8
+     */
+    protected AhoCorasickDoubleArrayTrie<V> trie;
+    /**
+     * the length of every key in chars, the length in bytes is kept by the automaton
+     */
+    protected int[] charLength;
+
+    /**
+     * Build from a map
+     *
+     * @param map a map containing key-value pairs
+     */
+    public void build(Map<String, V> map)
+    {
+        build(map, new BuildOptions());
+    }
+
+    /**
+     * Build from a map
+     *
+     * @param map     a map containing key-value pairs
+     * @param options optional settings of the build, {@link BuildOptions#setCompactAlphabet(boolean)} is recommended
+     *                since the alphabet has at most 256 symbols
+     * @throws IllegalArgumentException if the options fold case or width, which can't be done on UTF-8 bytes
+     */
+    public void build(Map<String, V> map, BuildOptions options)
+    {
+        // 折叠表作用于char，用在UTF-8的字节上会改写多字节字符的首字节
+        if (options.isIgnoreCase() || options.isFoldWidth())
+            throw new IllegalArgumentException("Case and width folding are not supported on UTF-8 bytes, fold the text before encoding it");
+        Map<String, V> byteMap = new LinkedHashMap<String, V>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<String, V> entry : map.entrySet())
+        {
+            byteMap.put(toByteString(entry.getKey()), entry.getValue());
+        }
+        // 不成对的代理编码为'?'，可能与其他词合并，所以按合并后的词计算字符数
+        int[] charLength = new int[byteMap.size()];
+        int i = 0;
+        for (String bytes : byteMap.keySet())
+        {
+            for (int k = 0; k < bytes.length(); ++k)
+            {
+                char b = bytes.charAt(k);
+                if ((b & 0xC0) != 0x80) charLength[i] += b >= 0xF0 ? 2 : 1; // 4字节的字符对应一对代理
+            }
+            ++i;
+        }
+        AhoCorasickDoubleArrayTrie<V> trie = new AhoCorasickDoubleArrayTrie<V>();
+        trie.build(byteMap, options);
+        this.trie = trie;
+        this.charLength = charLength;
+    }
+
+    /**
+     * encode a key into UTF-8, and keep every byte as a char in [0, 255]
+     */
+    private static String toByteString(String key)
+    {
+        byte[] bytes = key.getBytes(UTF_8);
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            chars[i] = (char) (bytes[i] & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse text
+     *
+     * @param text      The UTF-8 encoded text
+     * @param offset    the index of the first byte to scan
+     * @param length    the number of bytes to scan
+     * @param processor A processor which handles the output, begin and end are indexes of text
+     */
+    public void parseText(byte[] text, int offset, int length, IHit<V> processor)
+    {
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        int currentState = 0;
+        for (int i = offset, end = offset + length; i < end; ++i)
+        {
+            currentState = trie.getState(currentState, (char) (text[i] & 0xFF));
+            final int position = i + 1;
+            for (int o = trie.outputOffsets[currentState], e = trie.outputOffsets[currentState + 1]; o < e; ++o)
+            {
+                int hit = trie.outputIds[o];
+                processor.hit(position - trie.l[hit], position, trie.v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Parse text, reporting offsets in both bytes and chars
+     *
+     * @param text      The UTF-8 encoded text
+     * @param offset    the index of the first byte to scan
+     * @param length    the number of bytes to scan
+     * @param processor A processor which handles the output, begin and end are indexes of text, charBegin and charEnd
+     *                  are indexes of new String(text, offset, length, UTF_8)
+     */
+    public void parseText(byte[] text, int offset, int length, IHitUtf8<V> processor)
+    {
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        int currentState = 0;
+        int charPosition = 0;
+        for (int i = offset, end = offset + length; i < end; ++i)
+        {
+            byte b = text[i];
+            if ((b & 0xC0) != 0x80) // 每个字符的首字节，4字节的字符对应一对代理
+                charPosition += (b & 0xF8) == 0xF0 ? 2 : 1;
+            currentState = trie.getState(currentState, (char) (b & 0xFF));
+            final int position = i + 1;
+            for (int o = trie.outputOffsets[currentState], e = trie.outputOffsets[currentState + 1]; o < e; ++o)
+            {
+                int hit = trie.outputIds[o];
+                processor.hit(position - trie.l[hit], position, charPosition - charLength[hit], charPosition, trie.v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Parse the remaining bytes of a buffer, its position is left untouched
+     *
+     * @param text      The UTF-8 encoded text
+     * @param processor A processor which handles the output, begin and end are absolute indexes of the buffer
+     */
+    public void parseText(ByteBuffer text, IHit<V> processor)
+    {
+        if (text.hasArray())
+        {
+            parseText(text.array(), text.arrayOffset() + text.position(), text.remaining(), new OffsetHit<V>(processor, text.arrayOffset()));
+            return;
+        }
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        int currentState = 0;
+        for (int i = text.position(), end = text.limit(); i < end; ++i)
+        {
+            currentState = trie.getState(currentState, (char) (text.get(i) & 0xFF));
+            final int position = i + 1;
+            for (int o = trie.outputOffsets[currentState], e = trie.outputOffsets[currentState + 1]; o < e; ++o)
+            {
+                int hit = trie.outputIds[o];
+                processor.hit(position - trie.l[hit], position, trie.v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Parse the remaining bytes of a buffer, reporting offsets in both bytes and chars, its position is left untouched
+     *
+     * @param text      The UTF-8 encoded text
+     * @param processor A processor which handles the output, begin and end are absolute indexes of the buffer,
+     *                  charBegin and charEnd are indexes of the decoded remaining bytes
+     */
+    public void parseText(ByteBuffer text, IHitUtf8<V> processor)
+    {
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        int currentState = 0;
+        int charPosition = 0;
+        for (int i = text.position(), end = text.limit(); i < end; ++i)
+        {
+            byte b = text.get(i);
+            if ((b & 0xC0) != 0x80)
+                charPosition += (b & 0xF8) == 0xF0 ? 2 : 1;
+            currentState = trie.getState(currentState, (char) (b & 0xFF));
+            final int position = i + 1;
+            for (int o = trie.outputOffsets[currentState], e = trie.outputOffsets[currentState + 1]; o < e; ++o)
+            {
+                int hit = trie.outputIds[o];
+                processor.hit(position - trie.l[hit], position, charPosition - charLength[hit], charPosition, trie.v[hit]);
+            }
+        }
+    }
+
+    /**
+     * Checks that the bytes contain at least one key
+     *
+     * @param text   The UTF-8 encoded text
+     * @param offset the index of the first byte to scan
+     * @param length the number of bytes to scan
+     * @return {@code true} if the bytes contain at least one key
+     */
+    public boolean matches(byte[] text, int offset, int length)
+    {
+        final AhoCorasickDoubleArrayTrie<V> trie = this.trie;
+        int currentState = 0;
+        for (int i = offset, end = offset + length; i < end; ++i)
+        {
+            currentState = trie.getState(currentState, (char) (text[i] & 0xFF));
+            if (trie.outputOffsets[currentState] != trie.outputOffsets[currentState + 1])
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get value by a String key, just like a map.get() method
+     *
+     * @param key The key
+     * @return value if exist otherwise it return null
+     */
+    public V get(String key)
+    {
+        return trie.get(toByteString(key));
+    }
+
+    /**
+     * match exactly by a key
+     *
+     * @param key the key
+     * @return the index of the key, you can use it as a perfect hash function
+     */
+    public int exactMatchSearch(String key)
+    {
+        return trie.exactMatchSearch(toByteString(key));
+    }
+
+    /**
+     * @return the size of the keywords
+     */
+    public int size()
+    {
+        return trie.size();
+    }
+
+    /**
+     * Processor handles the output when hit a keyword in UTF-8 encoded text
+     */
+    public interface IHitUtf8<V>
+    {
+        /**
+         * Hit a keyword
+         *
+         * @param begin     the beginning index in bytes, inclusive.
+         * @param end       the ending index in bytes, exclusive.
+         * @param charBegin the beginning index in chars of the decoded text, inclusive.
+         * @param charEnd   the ending index in chars of the decoded text, exclusive.
+         * @param value     the value assigned to the keyword
+         */
+        void hit(int begin, int end, int charBegin, int charEnd, V value);
+    }
+
+    /**
+     * translates the indexes of a backing array to the indexes of its buffer
+     */
+    private static class OffsetHit<V> implements IHit<V>
+    {
+        private final IHit<V> processor;
+        private final int arrayOffset;
+
+        OffsetHit(IHit<V> processor, int arrayOffset)
+        {
+            this.processor = processor;
+            this.arrayOffset = arrayOffset;
+        }
+
+        @Override
+        public void hit(int begin, int end, V value)
+        {
+            processor.hit(begin - arrayOffset, end - arrayOffset, value);
+        }
+    }
+}
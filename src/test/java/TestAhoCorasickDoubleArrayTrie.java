@@ -20,12 +20,30 @@
 
 import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie;
 import com.hankcs.algorithm.AhoCorasickDoubleArrayTrie.Hit;
+import com.hankcs.algorithm.BuildOptions;
+import com.hankcs.algorithm.BuildReport;
+import com.hankcs.algorithm.CodePointAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.CompactAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.HitBuffer;
+import com.hankcs.algorithm.HotSwapAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.IncrementalAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.InterleavedAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.MatchMode;
+import com.hankcs.algorithm.MappedAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.MultiTenantAhoCorasickDoubleArrayTrie;
+import com.hankcs.algorithm.Utf8AhoCorasickDoubleArrayTrie;
 
 import junit.framework.TestCase;
-import org.ahocorasick.trie.Trie;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author hankcs
@@ -256,81 +274,1248 @@ public class TestAhoCorasickDoubleArrayTrie extends TestCase
         return dictionary;
     }
 
-    private void runTest(String dictionaryPath, String textPath) throws IOException
+    public void testSaveAndLoad() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildASimpleAhoCorasickDoubleArrayTrie();
+        final String tmpPath = System.getProperty("java.io.tmpdir").replace("\\\\", "/") + "/acdat.tmp";
+        System.out.println("Saving acdat to: " + tmpPath);
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(tmpPath));
+        out.writeObject(acdat);
+        out.close();
+        System.out.println("Loading acdat from: " + tmpPath);
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream(tmpPath));
+        acdat = (AhoCorasickDoubleArrayTrie<String>) in.readObject();
+        validateASimpleAhoCorasickDoubleArrayTrie(acdat);
+    }
+
+    public void testBuildEmptyTrie()
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        acdat.build(map);
+        assertEquals(0, acdat.size());
+        List<Hit<String>> hits = acdat.parseText("uhers");
+        assertEquals(0, hits.size());
+    }
+
+    public void testSaveAndLoadBinary() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildAhoCorasickDoubleArrayTrie("cn/dictionary.txt");
+        File file = File.createTempFile("acdat", ".bin");
+        file.deleteOnExit();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        acdat.saveBinary(out);
+        out.close();
+        String[] values = new String[acdat.size()];
+        for (int i = 0; i < values.length; ++i)
+        {
+            values[i] = acdat.get(i);
+        }
+        MappedAhoCorasickDoubleArrayTrie<String> mapped = MappedAhoCorasickDoubleArrayTrie.open(file, values);
+        assertEquals(acdat.size(), mapped.size());
+        String text = loadText("cn/text.txt");
+        assertEquals(acdat.parseText(text).toString(), mapped.parseText(text).toString());
+        assertEquals(acdat.findFirst(text).toString(), mapped.findFirst(text).toString());
+        assertTrue(mapped.matches(text));
+        for (int i = 0; i < values.length; i += 97)
+        {
+            assertEquals(i, mapped.exactMatchSearch(values[i]));
+            assertEquals(values[i], mapped.get(values[i]));
+        }
+        assertNull(mapped.get(text.substring(0, 100)));
+
+        assertEquals(file.length(), acdat.binarySize());
+        MappedAhoCorasickDoubleArrayTrie<String> offHeap = MappedAhoCorasickDoubleArrayTrie.offHeap(acdat);
+        assertEquals(acdat.parseText(text).toString(), offHeap.parseText(text).toString());
+        assertEquals(values[values.length - 1], offHeap.get(values[values.length - 1]));
+    }
+
+    public void testLoadLegacyOutputTable() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildASimpleAhoCorasickDoubleArrayTrie();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        acdat.save(out);
+        out.close();
+        // rewrite the flattened output table as the int[][] saved by older versions
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Object base = in.readObject(), check = in.readObject(), fail = in.readObject();
+        int[] outputOffsets = (int[]) in.readObject();
+        int[] outputIds = (int[]) in.readObject();
+        Object l = in.readObject(), v = in.readObject();
+        in.close();
+        int[][] output = new int[outputOffsets.length - 1][];
+        for (int i = 0; i < output.length; ++i)
+        {
+            if (outputOffsets[i] != outputOffsets[i + 1])
+                output[i] = Arrays.copyOfRange(outputIds, outputOffsets[i], outputOffsets[i + 1]);
+        }
+        bytes = new ByteArrayOutputStream();
+        out = new ObjectOutputStream(bytes);
+        for (Object o : new Object[]{base, check, fail, output, l, v})
+        {
+            out.writeObject(o);
+        }
+        out.close();
+
+        AhoCorasickDoubleArrayTrie<String> legacy = new AhoCorasickDoubleArrayTrie<String>();
+        legacy.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(acdat.parseText("uhers").toString(), legacy.parseText("uhers").toString());
+        validateASimpleAhoCorasickDoubleArrayTrie(legacy);
+    }
+
+    public void testDfa() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildASimpleAhoCorasickDoubleArrayTrie();
+        acdat.buildDfa(Integer.MAX_VALUE);
+        validateASimpleAhoCorasickDoubleArrayTrie(acdat);
+        assertEquals("[[1:3]=he, [1:5]=hers]", acdat.parseText("uhers").toString());
+
+        for (String language : new String[]{"en", "cn"})
+        {
+            TreeMap<String, String> map = new TreeMap<String, String>();
+            for (String key : loadDictionary(language + "/dictionary.txt"))
+            {
+                map.put(key, key);
+            }
+            String text = loadText(language + "/text.txt");
+            AhoCorasickDoubleArrayTrie<String> nfa = new AhoCorasickDoubleArrayTrie<String>();
+            nfa.build(map);
+            String expected = nfa.parseText(text).toString();
+            // 7462 distinct characters in cn make every row cost 29KB, so only the root gets a row there
+            for (int depth : "en".equals(language) ? new int[]{1, 3, Integer.MAX_VALUE} : new int[]{1})
+            {
+                AhoCorasickDoubleArrayTrie<String> dfa = new AhoCorasickDoubleArrayTrie<String>();
+                dfa.build(map, new BuildOptions().setDfaDepth(depth));
+                assertEquals(expected, dfa.parseText(text).toString());
+                assertEquals(nfa.findFirst(text).toString(), dfa.findFirst(text).toString());
+            }
+        }
+    }
+
+    public void testCompactAlphabet() throws Exception
+    {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("cn/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        String text = loadText("cn/text.txt");
+        AhoCorasickDoubleArrayTrie<String> raw = new AhoCorasickDoubleArrayTrie<String>();
+        raw.build(map);
+        AhoCorasickDoubleArrayTrie<String> compact = new AhoCorasickDoubleArrayTrie<String>();
+        compact.build(map, new BuildOptions().setCompactAlphabet(true).setDfaDepth(1));
+        String expected = raw.parseText(text).toString();
+        assertEquals(expected, compact.parseText(text).toString());
+        for (String key : map.keySet())
+        {
+            assertEquals(raw.exactMatchSearch(key), compact.exactMatchSearch(key));
+        }
+        assertEquals(-1, compact.exactMatchSearch("\uFFFF"));
+        assertNull(compact.findFirst("\u0000\uFFFF"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        compact.save(out);
+        out.close();
+        AhoCorasickDoubleArrayTrie<String> loaded = new AhoCorasickDoubleArrayTrie<String>();
+        loaded.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(expected, loaded.parseText(text).toString());
+
+        bytes = new ByteArrayOutputStream();
+        compact.saveBinary(bytes);
+        MappedAhoCorasickDoubleArrayTrie<String> mapped = new MappedAhoCorasickDoubleArrayTrie<String>(ByteBuffer.wrap(bytes.toByteArray()), map.values().toArray(new String[0]));
+        assertEquals(expected, mapped.parseText(text).toString());
+        assertEquals(map.firstKey(), mapped.get(map.firstKey()));
+
+        AhoCorasickDoubleArrayTrie<String> empty = new AhoCorasickDoubleArrayTrie<String>();
+        empty.build(new TreeMap<String, String>(), new BuildOptions().setCompactAlphabet(true));
+        assertFalse(empty.matches("uhers"));
+    }
+
+    public void testUtf8() throws Exception
+    {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("cn/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        map.put("\uD83D\uDE00ok", "emoji");
+        String text = loadText("cn/text.txt") + "\uD83D\uDE00ok";
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(map);
+        final Utf8AhoCorasickDoubleArrayTrie<String> utf8 = new Utf8AhoCorasickDoubleArrayTrie<String>();
+        utf8.build(map, new BuildOptions().setCompactAlphabet(true));
+
+        final byte[] bytes = ("prefix" + text).getBytes("UTF-8");
+        final int offset = "prefix".length();
+        final List<Hit<String>> hits = new ArrayList<Hit<String>>();
+        utf8.parseText(bytes, offset, bytes.length - offset, new Utf8AhoCorasickDoubleArrayTrie.IHitUtf8<String>()
+        {
+            @Override
+            public void hit(int begin, int end, int charBegin, int charEnd, String value)
+            {
+                try
+                {
+                    assertEquals(value.equals("emoji") ? "\uD83D\uDE00ok" : value, new String(bytes, begin, end - begin, "UTF-8"));
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    throw new RuntimeException(e);
+                }
+                hits.add(new Hit<String>(charBegin, charEnd, value));
+            }
+        });
+        assertEquals(acdat.parseText(text).toString(), hits.toString());
+
+        final int[] count = new int[1];
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).position(offset);
+        utf8.parseText(direct, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value)
+            {
+                ++count[0];
+            }
+        });
+        assertEquals(hits.size(), count[0]);
+        assertTrue(utf8.matches(bytes, 0, bytes.length));
+        assertEquals("emoji", utf8.get("\uD83D\uDE00ok"));
+
+        // 不成对的代理编码为'?'，两个词合并后字符偏移依然正确
+        TreeMap<String, String> merged = new TreeMap<String, String>();
+        merged.put("a?", "a?");
+        merged.put("a\uD800", "a\uD800");
+        merged.put("xyz", "xyz");
+        Utf8AhoCorasickDoubleArrayTrie<String> mergedUtf8 = new Utf8AhoCorasickDoubleArrayTrie<String>();
+        mergedUtf8.build(merged);
+        byte[] mergedText = "--xyz".getBytes("UTF-8");
+        hits.clear();
+        mergedUtf8.parseText(mergedText, 0, mergedText.length, new Utf8AhoCorasickDoubleArrayTrie.IHitUtf8<String>()
+        {
+            @Override
+            public void hit(int begin, int end, int charBegin, int charEnd, String value)
+            {
+                hits.add(new Hit<String>(charBegin, charEnd, value));
+            }
+        });
+        assertEquals("[[2:5]=xyz]", hits.toString());
+
+        // 折叠会改写多字节字符的首字节，不支持
+        TreeMap<String, String> accented = new TreeMap<String, String>();
+        accented.put("\u00E9", "\u00E9");
+        try
+        {
+            new Utf8AhoCorasickDoubleArrayTrie<String>().build(accented, new BuildOptions().setIgnoreCase(true));
+            fail();
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    public void testParallelBuild() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            for (String language : new String[]{"en", "cn"})
+            {
+                TreeMap<String, String> map = new TreeMap<String, String>();
+                for (String key : loadDictionary(language + "/dictionary.txt"))
+                {
+                    map.put(key, key);
+                }
+                map.put("", "");
+                AhoCorasickDoubleArrayTrie<String> sequential = new AhoCorasickDoubleArrayTrie<String>();
+                sequential.build(map);
+                AhoCorasickDoubleArrayTrie<String> parallel = new AhoCorasickDoubleArrayTrie<String>();
+                parallel.build(map, new BuildOptions().setExecutor(executor));
+
+                // 并行构建的结果应与串行构建逐字节相同
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                sequential.saveBinary(expected);
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                parallel.saveBinary(actual);
+                assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+                String text = loadText(language + "/text.txt");
+                assertEquals(sequential.parseText(text).toString(), parallel.parseText(text).toString());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testBuildFromSortedKeys() throws Exception
     {
-        Set<String> dictionary = loadDictionary(dictionaryPath);
-        String text = loadText(textPath);
-        // Build a ahoCorasickNaive implemented by robert-bor
-        Trie ahoCorasickNaive = new Trie();
-        for (String word : dictionary)
+        for (String language : new String[]{"en", "cn"})
+        {
+            TreeMap<String, String> map = new TreeMap<String, String>();
+            for (String key : loadDictionary(language + "/dictionary.txt"))
+            {
+                map.put(key, key);
+            }
+            String[] keys = map.keySet().toArray(new String[0]);
+            String[] values = map.values().toArray(new String[0]);
+            String text = loadText(language + "/text.txt");
+            for (boolean compactAlphabet : new boolean[]{false, true})
+            {
+                BuildOptions options = new BuildOptions().setCompactAlphabet(compactAlphabet);
+                AhoCorasickDoubleArrayTrie<String> expected = new AhoCorasickDoubleArrayTrie<String>();
+                expected.build(map, options);
+                AhoCorasickDoubleArrayTrie<String> actual = new AhoCorasickDoubleArrayTrie<String>();
+                actual.build(keys, values, options);
+
+                // 与State构建的结果逐字节相同
+                ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+                expected.saveBinary(expectedBytes);
+                ByteArrayOutputStream actualBytes = new ByteArrayOutputStream();
+                actual.saveBinary(actualBytes);
+                assertTrue(Arrays.equals(expectedBytes.toByteArray(), actualBytes.toByteArray()));
+                assertEquals(expected.parseText(text).toString(), actual.parseText(text).toString());
+                assertEquals(keys[keys.length - 1], actual.get(keys[keys.length - 1]));
+            }
+        }
+
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(new String[]{"he", "hers", "his", "she"}, new String[]{"he", "hers", "his", "she"});
+        assertEquals(buildASimpleAhoCorasickDoubleArrayTrie().parseText("ushers").toString(), acdat.parseText("ushers").toString());
+        acdat.build(new String[0], new String[0]);
+        assertFalse(acdat.matches("ushers"));
+        try
+        {
+            acdat.build(new String[]{"his", "hers"}, new String[]{"his", "hers"});
+            fail("Unsorted keys should be rejected");
+        }
+        catch (IllegalArgumentException expected)
         {
-            ahoCorasickNaive.addKeyword(word);
         }
-        ahoCorasickNaive.parseText(""); // More fairly, robert-bor's implementation needs to call this to build ac automata.
-        // Build a AhoCorasickDoubleArrayTrie implemented by hankcs
-        AhoCorasickDoubleArrayTrie<String> ahoCorasickDoubleArrayTrie = new AhoCorasickDoubleArrayTrie<String>();
-        TreeMap<String, String> dictionaryMap = new TreeMap<String, String>();
-        for (String word : dictionary)
+        try
         {
-            dictionaryMap.put(word, word);  // we use the same text as the property of a word
+            acdat.build(new String[]{"he", "he"}, new String[]{"he", "he"});
+            fail("Duplicated keys should be rejected");
         }
-        ahoCorasickDoubleArrayTrie.build(dictionaryMap);
-        // Let's test the speed of the two Aho-Corasick automata
-        System.out.printf("Parsing document which contains %d characters, with a dictionary of %d words.\n", text.length(), dictionary.size());
-        long start = System.currentTimeMillis();
-        ahoCorasickNaive.parseText(text);
-        long costTimeNaive = System.currentTimeMillis() - start;
-        start = System.currentTimeMillis();
-        ahoCorasickDoubleArrayTrie.parseText(text, new AhoCorasickDoubleArrayTrie.IHit<String>()
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    public void testBuildFromStream() throws Exception
+    {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("cn/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        String text = loadText("cn/text.txt");
+        AhoCorasickDoubleArrayTrie<String> expected = new AhoCorasickDoubleArrayTrie<String>();
+        expected.build(map);
+        String expectedHits = expected.parseText(text).toString();
+
+        AhoCorasickDoubleArrayTrie<String> fromIterator = new AhoCorasickDoubleArrayTrie<String>();
+        fromIterator.build(map.entrySet().iterator());
+        assertEquals(expectedHits, fromIterator.parseText(text).toString());
+
+        StringBuilder lines = new StringBuilder();
+        for (String key : map.keySet())
+        {
+            lines.append(key).append("\r\n");
+        }
+        AhoCorasickDoubleArrayTrie<String> fromReader = new AhoCorasickDoubleArrayTrie<String>();
+        fromReader.build(new StringReader(lines.toString()));
+        assertEquals(map.size(), fromReader.size());
+        final List<String> hits = new ArrayList<String>();
+        fromReader.parseText(text, new AhoCorasickDoubleArrayTrie.IHit<String>()
         {
             @Override
             public void hit(int begin, int end, String value)
             {
+                assertNull(value);
+                hits.add("[" + begin + ":" + end + "]");
+            }
+        });
+        assertEquals(expected.parseText(text).size(), hits.size());
+        for (String key : map.keySet())
+        {
+            assertEquals(expected.exactMatchSearch(key), fromReader.exactMatchSearch(key));
+        }
+
+        try
+        {
+            fromReader.build(new StringReader("hers\nhe\n"));
+            fail("Unsorted keys should be rejected");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
 
+    public void testParallelParse() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            for (String language : new String[]{"en", "cn"})
+            {
+                AhoCorasickDoubleArrayTrie<String> acdat = buildAhoCorasickDoubleArrayTrie(language + "/dictionary.txt");
+                String text = loadText(language + "/text.txt");
+                String expected = acdat.parseText(text).toString();
+                assertEquals(expected, acdat.parseText(text, executor).toString());
+                // 块很小时，几乎每个词都跨越块的边界
+                for (int chunkSize : new int[]{97, 4096})
+                {
+                    final List<Hit<String>> hits = new ArrayList<Hit<String>>();
+                    acdat.parseText(text, chunkSize, executor, new AhoCorasickDoubleArrayTrie.IHit<String>()
+                    {
+                        @Override
+                        public void hit(int begin, int end, String value)
+                        {
+                            hits.add(new Hit<String>(begin, end, value));
+                        }
+                    });
+                    assertEquals(expected, hits.toString());
+                }
+            }
+            AhoCorasickDoubleArrayTrie<String> acdat = buildASimpleAhoCorasickDoubleArrayTrie();
+            final List<Hit<String>> hits = new ArrayList<Hit<String>>();
+            acdat.parseText("uhers ushers", 1, executor, new AhoCorasickDoubleArrayTrie.IHit<String>()
+            {
+                @Override
+                public void hit(int begin, int end, String value)
+                {
+                    hits.add(new Hit<String>(begin, end, value));
+                }
+            });
+            assertEquals(acdat.parseText("uhers ushers").toString(), hits.toString());
+            assertTrue(acdat.parseText("", executor).isEmpty());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    public void testMatcher() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildAhoCorasickDoubleArrayTrie("cn/dictionary.txt");
+        String text = loadText("cn/text.txt");
+        String expected = acdat.parseText(text).toString();
+        final List<Hit<String>> hits = new ArrayList<Hit<String>>();
+        AhoCorasickDoubleArrayTrie.Matcher<String> matcher = acdat.matcher(new AhoCorasickDoubleArrayTrie.IHitLong<String>()
+        {
+            @Override
+            public void hit(long begin, long end, String value)
+            {
+                hits.add(new Hit<String>((int) begin, (int) end, value));
+            }
+        });
+        // 缓冲区很小时，很多词跨越缓冲区的边界
+        char[] chars = text.toCharArray();
+        for (int off = 0; off < chars.length; off += 5)
+        {
+            matcher.feed(chars, off, Math.min(5, chars.length - off));
+        }
+        assertEquals(chars.length, matcher.position());
+        assertEquals(expected, hits.toString());
+
+        hits.clear();
+        matcher.reset();
+        assertEquals(text.length(), matcher.feed(new StringReader(text)));
+        assertEquals(expected, hits.toString());
+
+        hits.clear();
+        matcher.reset();
+        matcher.feed(text.substring(0, 1000));
+        matcher.feed(text.substring(1000));
+        assertEquals(expected, hits.toString());
+    }
+
+    public void testBatch() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildASimpleAhoCorasickDoubleArrayTrie();
+        String[] docs = new String[]{"uhers", "", "xyz", "his", "s", "ushers", "abcdefghijklmnop", "she"};
+        BitSet matched = acdat.matchesBatch(docs);
+        for (int d = 0; d < docs.length; ++d)
+        {
+            assertEquals(docs[d], acdat.matches(docs[d]), matched.get(d));
+        }
+        final List<String> hits = new ArrayList<String>();
+        acdat.parseBatch(docs, new AhoCorasickDoubleArrayTrie.IHitBatch<String>()
+        {
+            @Override
+            public void hit(int doc, int begin, int end, String value)
+            {
+                hits.add(doc + new Hit<String>(begin, end, value).toString());
             }
         });
-        long costTimeACDAT = System.currentTimeMillis() - start;
-        System.out.printf("%-15s\t%-15s\t%-15s\n", "", "Naive", "ACDAT");
-        System.out.printf("%-15s\t%-15d\t%-15d\n", "time", costTimeNaive, costTimeACDAT);
-        System.out.printf("%-15s\t%-15.2f\t%-15.2f\n", "char/s", (text.length() / (costTimeNaive / 1000.0)), (text.length() / (costTimeACDAT / 1000.0)));
-        System.out.printf("%-15s\t%-15.2f\t%-15.2f\n", "rate", 1.0, costTimeNaive / (double) costTimeACDAT);
-        System.out.println("===========================================================================");
+        List<String> expected = new ArrayList<String>();
+        for (int d = 0; d < docs.length; ++d)
+        {
+            for (Hit<String> hit : acdat.parseText(docs[d]))
+            {
+                expected.add(d + hit.toString());
+            }
+        }
+        assertEquals(expected, hits);
+
+        AhoCorasickDoubleArrayTrie<String> cn = buildAhoCorasickDoubleArrayTrie("cn/dictionary.txt");
+        String[] lines = loadText("cn/text.txt").split("\n");
+        matched = cn.matchesBatch(lines);
+        for (int d = 0; d < lines.length; ++d)
+        {
+            assertEquals(cn.matches(lines[d]), matched.get(d));
+        }
+        assertTrue(cn.matchesBatch(new String[0]).isEmpty());
+    }
+
+    public void testHitBuffer() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> acdat = buildAhoCorasickDoubleArrayTrie("en/dictionary.txt");
+        String text = loadText("en/text.txt");
+        List<Hit<String>> expected = acdat.parseText(text);
+        HitBuffer hits = new HitBuffer(1);
+        for (int round = 0; round < 2; ++round)
+        {
+            hits.clear();
+            if (round == 0)
+                acdat.parseText(text, hits);
+            else
+                acdat.parseText(text.toCharArray(), hits);
+            assertEquals(expected.size(), hits.size());
+            for (int i = 0; i < hits.size(); ++i)
+            {
+                Hit<String> hit = expected.get(i);
+                assertEquals(hit.begin, hits.begin(i));
+                assertEquals(hit.end, hits.end(i));
+                assertEquals(hit.value, acdat.get(hits.keyId(i)));
+            }
+        }
+        try
+        {
+            hits.begin(hits.size());
+            fail("Index out of bounds should be rejected");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+        }
+    }
+
+    public void testMatchMode() throws Exception
+    {
+        AhoCorasickDoubleArrayTrie<String> simple = buildASimpleAhoCorasickDoubleArrayTrie();
+        assertEquals("[[0:4]=hers, [5:8]=she]", simple.parseText("hers she", MatchMode.LEFTMOST_LONGEST).toString());
+        assertEquals("[[0:2]=he, [5:8]=she]", simple.parseText("hers she", MatchMode.LEFTMOST_FIRST).toString());
+        assertEquals("[[0:2]=he, [5:8]=she]", simple.parseText("hers she", MatchMode.NON_OVERLAPPING).toString());
+        assertEquals("[[1:4]=she]", simple.parseText("ushers", MatchMode.LEFTMOST_LONGEST).toString());
+        assertEquals(simple.parseText("ushers").toString(), simple.parseText("ushers", MatchMode.ALL).toString());
+
+        for (String language : new String[]{"en", "cn"})
+        {
+            AhoCorasickDoubleArrayTrie<String> acdat = buildAhoCorasickDoubleArrayTrie(language + "/dictionary.txt");
+            String text = loadText(language + "/text.txt");
+            for (MatchMode mode : MatchMode.values())
+            {
+                assertEquals(mode.toString(), selectMatches(acdat, text, mode), acdat.parseText(text, mode).toString());
+            }
+            HitBuffer hits = new HitBuffer();
+            acdat.parseText(text, MatchMode.LEFTMOST_LONGEST, hits);
+            assertEquals(acdat.parseText(text, MatchMode.LEFTMOST_LONGEST).size(), hits.size());
+        }
     }
 
     /**
-     * Compare my AhoCorasickDoubleArrayTrie with robert-bor's aho-corasick, notice that robert-bor's aho-corasick is
-     * compiled under jdk1.8, so you will need jdk1.8 to run this test<br>
-     * To avoid JVM wasting time on allocating memory, please use -Xms512m -Xmx512m -Xmn256m .
-     *
-     * @throws Exception
+     * select matches from all the overlapping ones, as a reference of the match modes
      */
-    public void testBenchmark() throws Exception
+    private static String selectMatches(AhoCorasickDoubleArrayTrie<String> acdat, String text, MatchMode mode)
     {
-        runTest("en/dictionary.txt", "en/text.txt");
-        runTest("cn/dictionary.txt", "cn/text.txt");
+        final List<int[]> all = new ArrayList<int[]>();
+        acdat.parseText(text.toCharArray(), new AhoCorasickDoubleArrayTrie.IHitFull<String>()
+        {
+            @Override
+            public void hit(int begin, int end, String value, int index)
+            {
+                all.add(new int[]{begin, end, index});
+            }
+        });
+        List<Hit<String>> selected = new ArrayList<Hit<String>>();
+        int position = 0;
+        if (mode == MatchMode.ALL)
+        {
+            for (int[] hit : all)
+            {
+                selected.add(new Hit<String>(hit[0], hit[1], acdat.get(hit[2])));
+            }
+        }
+        else if (mode == MatchMode.NON_OVERLAPPING)
+        {
+            for (int i = 0; i < all.size(); )
+            {
+                int[] best = null;
+                int j = i;
+                for (; j < all.size() && all.get(j)[1] == all.get(i)[1]; ++j)
+                {
+                    int[] hit = all.get(j);
+                    if (hit[0] >= position && (best == null || hit[0] < best[0])) best = hit;
+                }
+                if (best != null)
+                {
+                    selected.add(new Hit<String>(best[0], best[1], acdat.get(best[2])));
+                    position = best[1];
+                }
+                i = j;
+            }
+        }
+        else
+        {
+            final boolean longest = mode == MatchMode.LEFTMOST_LONGEST;
+            Collections.sort(all, new Comparator<int[]>()
+            {
+                @Override
+                public int compare(int[] o1, int[] o2)
+                {
+                    if (o1[0] != o2[0]) return o1[0] < o2[0] ? -1 : 1;
+                    if (longest) return o1[1] > o2[1] ? -1 : (o1[1] == o2[1] ? 0 : 1);
+                    return o1[2] < o2[2] ? -1 : (o1[2] == o2[2] ? 0 : 1);
+                }
+            });
+            for (int[] hit : all)
+            {
+                if (hit[0] < position) continue;
+                selected.add(new Hit<String>(hit[0], hit[1], acdat.get(hit[2])));
+                position = hit[1];
+            }
+        }
+        return selected.toString();
     }
 
-    public void testSaveAndLoad() throws Exception
+    public void testIncrementalUpdate() throws Exception
     {
-        AhoCorasickDoubleArrayTrie<String> acdat = buildASimpleAhoCorasickDoubleArrayTrie();
-        final String tmpPath = System.getProperty("java.io.tmpdir").replace("\\\\", "/") + "/acdat.tmp";
-        System.out.println("Saving acdat to: " + tmpPath);
-        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(tmpPath));
-        out.writeObject(acdat);
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("cn/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        String text = loadText("cn/text.txt");
+        IncrementalAhoCorasickDoubleArrayTrie<String> incremental = new IncrementalAhoCorasickDoubleArrayTrie<String>();
+        try
+        {
+            incremental.put("a", "a");
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+        incremental.build(map);
+
+        // 删除一些词，新增一些词，修改一些词的值
+        Random random = new Random(0);
+        String[] keys = map.keySet().toArray(new String[0]);
+        Set<String> addedKeys = new HashSet<String>();
+        for (int i = 0; i < 200; ++i)
+        {
+            String key = keys[random.nextInt(keys.length)];
+            assertEquals(map.remove(key) != null, incremental.remove(key));
+        }
+        for (int i = 0; i < 100; ++i)
+        {
+            int begin = random.nextInt(text.length() - 8);
+            String key = text.substring(begin, begin + 2 + random.nextInt(6));
+            map.put(key, "+" + key);
+            incremental.put(key, "+" + key);
+            addedKeys.add(key);
+        }
+        String key = keys[random.nextInt(keys.length)];
+        map.put(key, "*");
+        incremental.put(key, "*");
+        addedKeys.add(key);
+        assertEquals("*", incremental.get(key));
+        assertEquals(map.size(), incremental.size());
+        assertEquals(addedKeys.size(), incremental.overlaySize());
+
+        AhoCorasickDoubleArrayTrie<String> expected = new AhoCorasickDoubleArrayTrie<String>();
+        expected.build(map);
+        assertEquals(sortedHits(expected.parseText(text)), sortedHits(incremental.parseText(text)));
+        for (String line : text.split("\n"))
+        {
+            assertEquals(expected.matches(line), incremental.matches(line));
+        }
+
+        incremental.compact();
+        assertEquals(0, incremental.overlaySize());
+        assertEquals(map.size(), incremental.size());
+        assertEquals(expected.parseText(text).toString(), incremental.parseText(text).toString());
+        assertEquals("*", incremental.get(key));
+    }
+
+    private static List<String> sortedHits(List<Hit<String>> hits)
+    {
+        List<String> sorted = new ArrayList<String>(hits.size());
+        for (Hit<String> hit : hits)
+        {
+            sorted.add(hit.toString());
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    public void testHotSwap() throws Exception
+    {
+        final TreeMap<String, String> mapA = new TreeMap<String, String>();
+        final TreeMap<String, String> mapB = new TreeMap<String, String>();
+        int i = 0;
+        for (String key : loadDictionary("en/dictionary.txt"))
+        {
+            mapA.put(key, "A");
+            if (i++ % 2 == 0) mapB.put(key, "B");
+        }
+        final String text = loadText("en/text.txt").substring(0, 20000);
+        AhoCorasickDoubleArrayTrie<String> trieA = new AhoCorasickDoubleArrayTrie<String>();
+        trieA.build(mapA);
+        AhoCorasickDoubleArrayTrie<String> trieB = new AhoCorasickDoubleArrayTrie<String>();
+        trieB.build(mapB);
+        final String expectedA = trieA.parseText(text).toString();
+        final String expectedB = trieB.parseText(text).toString();
+
+        // 多个线程不停地扫描，同时另一个线程反复重建并替换，读者只能看到A或B的完整结果
+        final HotSwapAhoCorasickDoubleArrayTrie<String> holder = new HotSwapAhoCorasickDoubleArrayTrie<String>(trieA);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger scans = new AtomicInteger();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try
+        {
+            List<Future<?>> readers = new ArrayList<Future<?>>();
+            for (int r = 0; r < 4; ++r)
+            {
+                readers.add(executor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        while (!stop.get())
+                        {
+                            String actual = holder.parseText(text).toString();
+                            if (!actual.equals(expectedA) && !actual.equals(expectedB))
+                                errors.add(actual);
+                            scans.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            BuildOptions options = new BuildOptions();
+            for (int round = 0; round < 6; ++round)
+            {
+                holder.rebuild(round % 2 == 0 ? mapB : mapA, options, executor).get();
+            }
+            stop.set(true);
+            for (Future<?> reader : readers)
+            {
+                reader.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertTrue(errors.isEmpty());
+        assertTrue(scans.get() > 0);
+        assertEquals(expectedA, holder.parseText(text).toString());
+        assertSame(holder.get(), holder.swap(trieB));
+        assertEquals(expectedB, holder.parseText(text).toString());
+    }
+
+    public void testMultiTenant() throws Exception
+    {
+        TreeMap<String, String> union = new TreeMap<String, String>();
+        List<List<String>> tenantKeys = new ArrayList<List<String>>();
+        for (int t = 0; t < 3; ++t)
+        {
+            tenantKeys.add(new ArrayList<String>());
+        }
+        int i = 0;
+        for (String key : loadDictionary("cn/dictionary.txt"))
+        {
+            union.put(key, key);
+            // 三个租户的词互相重叠
+            if (i % 2 == 0) tenantKeys.get(0).add(key);
+            if (i % 3 == 0) tenantKeys.get(1).add(key);
+            if (i % 7 == 0) tenantKeys.get(2).add(key);
+            ++i;
+        }
+        MultiTenantAhoCorasickDoubleArrayTrie<String> multiTenant = new MultiTenantAhoCorasickDoubleArrayTrie<String>();
+        multiTenant.build(union);
+        for (List<String> keys : tenantKeys)
+        {
+            assertEquals(multiTenant.tenantSize(), multiTenant.addTenant(keys));
+        }
+        String text = loadText("cn/text.txt");
+        HitBuffer hits = new HitBuffer();
+        for (int t = 0; t < tenantKeys.size(); ++t)
+        {
+            List<String> keys = tenantKeys.get(t);
+            assertEquals(keys.size(), multiTenant.size(t));
+            TreeMap<String, String> map = new TreeMap<String, String>();
+            for (String key : keys)
+            {
+                map.put(key, key);
+            }
+            AhoCorasickDoubleArrayTrie<String> dedicated = new AhoCorasickDoubleArrayTrie<String>();
+            dedicated.build(map);
+            List<Hit<String>> expected = dedicated.parseText(text);
+            List<Hit<String>> actual = multiTenant.parseText(t, text);
+            assertEquals(sortedHits(expected), sortedHits(actual));
+            hits.clear();
+            multiTenant.parseText(t, text, hits);
+            assertEquals(expected.size(), hits.size());
+            assertEquals(dedicated.matches(text), multiTenant.matches(t, text));
+            assertEquals(keys.get(0), multiTenant.get(t, keys.get(0)));
+        }
+        assertNull(multiTenant.get(1, tenantKeys.get(0).get(1)));
+
+        multiTenant.setTenant(2, Collections.singletonList(tenantKeys.get(2).get(0)));
+        assertEquals(1, multiTenant.size(2));
+        assertFalse(multiTenant.matches(2, "无关的文本"));
+        try
+        {
+            multiTenant.addTenant(Collections.singletonList("不在词典里的词"));
+            fail();
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    public void testFolding() throws Exception
+    {
+        String[] keys = {"hers", "his", "she", "he", "iphone", "k歌"};
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : keys)
+        {
+            map.put(key, key);
+        }
+        String text = "USHERS, ｉＰｈｏｎｅ　His Ｋ歌";
+        for (boolean compact : new boolean[]{false, true})
+        {
+            BuildOptions options = new BuildOptions().setIgnoreCase(true).setFoldWidth(true).setCompactAlphabet(compact);
+            AhoCorasickDoubleArrayTrie<String> folded = new AhoCorasickDoubleArrayTrie<String>();
+            folded.build(map, options);
+            assertEquals("[[1:4]=she, [2:4]=he, [2:6]=hers, [8:14]=iphone, [15:18]=his, [19:21]=k歌]",
+                         folded.parseText(text).toString());
+            assertEquals("hers", folded.get("HERS"));
+            assertEquals("iphone", folded.get("ｉＰＨＯＮＥ"));
+            assertTrue(folded.matches("ＳＨＥ"));
+
+            // 有序构建得到相同的自动机，保存加载后折叠依然有效
+            AhoCorasickDoubleArrayTrie<String> sorted = new AhoCorasickDoubleArrayTrie<String>();
+            sorted.build(map.keySet().toArray(new String[0]), map.values().toArray(new String[0]), options);
+            assertEquals(folded.parseText(text).toString(), sorted.parseText(text).toString());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            sorted.save(oos);
+            oos.close();
+            AhoCorasickDoubleArrayTrie<String> loaded = new AhoCorasickDoubleArrayTrie<String>();
+            loaded.load(new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())));
+            assertEquals(folded.parseText(text).toString(), loaded.parseText(text).toString());
+        }
+
+        // 大小写不同的词折叠后合并为一个
+        map.put("SHE", "SHE");
+        AhoCorasickDoubleArrayTrie<String> folded = new AhoCorasickDoubleArrayTrie<String>();
+        folded.build(map, new BuildOptions().setIgnoreCase(true));
+        assertEquals(map.size() - 1, folded.size());
+        assertEquals("she", folded.get("She"));
+
+        // 与先转小写再匹配的结果一致
+        TreeMap<String, String> dictionary = new TreeMap<String, String>();
+        for (String key : loadDictionary("en/dictionary.txt"))
+        {
+            dictionary.put(key.toLowerCase(), key.toLowerCase());
+        }
+        String original = loadText("en/text.txt").toUpperCase();
+        char[] lowered = original.toCharArray();
+        for (int i = 0; i < lowered.length; ++i)
+        {
+            lowered[i] = Character.toLowerCase(lowered[i]);
+        }
+        AhoCorasickDoubleArrayTrie<String> plain = new AhoCorasickDoubleArrayTrie<String>();
+        plain.build(dictionary);
+        folded = new AhoCorasickDoubleArrayTrie<String>();
+        folded.build(dictionary, new BuildOptions().setIgnoreCase(true));
+        assertEquals(plain.parseText(new String(lowered)).toString(), folded.parseText(original).toString());
+    }
+
+    public void testCodePoint() throws Exception
+    {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : new String[]{"\uD83D\uDE00", "\uD83D\uDE00\uD83D\uDE01", "a\uD83D\uDE01", "\uD840\uDC00字", "字"})
+        {
+            map.put(key, key);
+        }
+        CodePointAhoCorasickDoubleArrayTrie<String> codePoint = new CodePointAhoCorasickDoubleArrayTrie<String>();
+        codePoint.build(map);
+        AhoCorasickDoubleArrayTrie<String> utf16 = new AhoCorasickDoubleArrayTrie<String>();
+        utf16.build(map);
+        String text = "x\uD83D\uDE00\uD83D\uDE01a\uD83D\uDE01\uD840\uDC00字\uD83D\uDE02\uD83D";
+        assertEquals(sortedHits(utf16.parseText(text)), sortedHits(codePoint.parseText(text)));
+        assertEquals("[[1:3]=\uD83D\uDE00, [1:5]=\uD83D\uDE00\uD83D\uDE01]", codePoint.parseText("x\uD83D\uDE00\uD83D\uDE01").toString());
+        assertEquals("a\uD83D\uDE01", codePoint.get("a\uD83D\uDE01"));
+        assertNull(codePoint.get("\uD83D\uDE02"));
+        assertTrue(codePoint.matches("..字"));
+        assertFalse(codePoint.matches("\uD83D\uDE02\uD83D"));
+
+        // 将中文词典与语料整体移到扩展B区，结果应与UTF-16的自动机一致，均匀抽取约3000个词以免构建UTF-16的自动机太慢
+        TreeMap<String, String> dictionary = new TreeMap<String, String>();
+        Set<String> keys = loadDictionary("cn/dictionary.txt");
+        int step = Math.max(1, keys.size() / 3000), index = 0;
+        for (String key : keys)
+        {
+            if (index++ % step != 0) continue;
+            String shifted = toExtensionB(key);
+            dictionary.put(shifted, shifted);
+        }
+        text = toExtensionB(loadText("cn/text.txt"));
+        codePoint.build(dictionary, new BuildOptions().setDfaDepth(1));
+        utf16.build(dictionary);
+        assertEquals(dictionary.size(), codePoint.size());
+        List<Hit<String>> expected = utf16.parseText(text);
+        assertFalse(expected.isEmpty());
+        assertEquals(sortedHits(expected), sortedHits(codePoint.parseText(text)));
+    }
+
+    private static String toExtensionB(String text)
+    {
+        StringBuilder sb = new StringBuilder(text.length() * 2);
+        for (int i = 0; i < text.length(); ++i)
+        {
+            char c = text.charAt(i);
+            if (c >= '\u4E00' && c <= '\u9FFF')
+                sb.appendCodePoint(0x20000 + c - '\u4E00');
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public void testCompact() throws Exception
+    {
+        for (String language : new String[]{"en", "cn"})
+        {
+            TreeMap<String, String> map = new TreeMap<String, String>();
+            for (String key : loadDictionary(language + "/dictionary.txt"))
+            {
+                map.put(key, key);
+            }
+            String text = loadText(language + "/text.txt") + "\uFFFE\uFFFF";
+            for (boolean compactAlphabet : new boolean[]{false, true})
+            {
+                AhoCorasickDoubleArrayTrie<String> trie = new AhoCorasickDoubleArrayTrie<String>();
+                trie.build(map, new BuildOptions().setCompactAlphabet(compactAlphabet));
+                CompactAhoCorasickDoubleArrayTrie<String> compact = new CompactAhoCorasickDoubleArrayTrie<String>();
+                compact.build(trie);
+                assertEquals(trie.parseText(text).toString(), compact.parseText(text).toString());
+                HitBuffer hits = new HitBuffer();
+                compact.parseText(text, hits);
+                assertEquals(trie.parseText(text).size(), hits.size());
+                assertEquals(trie.matches("\uFFFF" + text.substring(0, 100)), compact.matches("\uFFFF" + text.substring(0, 100)));
+                for (String key : map.keySet())
+                {
+                    assertEquals(trie.exactMatchSearch(key), compact.exactMatchSearch(key));
+                }
+                assertNull(compact.get(map.firstKey() + "\uFFFF"));
+                assertEquals(map.size(), compact.size());
+                assertTrue(compact.memorySize() < trie.binarySize());
+            }
+        }
+
+        CompactAhoCorasickDoubleArrayTrie<String> empty = new CompactAhoCorasickDoubleArrayTrie<String>();
+        empty.build(new TreeMap<String, String>());
+        assertTrue(empty.parseText("uhers").isEmpty());
+        assertFalse(empty.matches("uhers\uFFFF"));
+        assertEquals(-1, empty.exactMatchSearch(""));
+
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        map.put("a\uFFFF", "a\uFFFF");
+        map.put("b", "b");
+        CompactAhoCorasickDoubleArrayTrie<String> compact = new CompactAhoCorasickDoubleArrayTrie<String>();
+        try
+        {
+            compact.build(map);
+            fail();
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+        compact.build(map, new BuildOptions().setCompactAlphabet(true));
+        assertEquals("[[0:2]=a\uFFFF, [2:3]=b]", compact.parseText("a\uFFFFb\uFFFE").toString());
+    }
+
+    public void testBuildReport() throws Exception
+    {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("en/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        String[] keys = map.keySet().toArray(new String[0]);
+        AhoCorasickDoubleArrayTrie<String> defaults = new AhoCorasickDoubleArrayTrie<String>();
+        defaults.build(keys, keys);
+        BuildReport report = defaults.getBuildReport();
+        assertEquals(keys.length, report.getKeyCount());
+        assertTrue(report.getSlotCount() >= report.getOccupiedSlotCount());
+        assertTrue(report.getFillRatio() > 0.5 && report.getFillRatio() <= 1);
+        assertTrue(report.getProbeCount() > 0);
+        assertEquals(0, report.getResizeCount());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        defaults.saveBinary(expected);
+
+        // 初始空间与增长速度只影响扩容的次数，不影响布局
+        AhoCorasickDoubleArrayTrie<String> small = new AhoCorasickDoubleArrayTrie<String>();
+        small.build(keys, keys, new BuildOptions().setInitialSize(16).setGrowthFactor(1.5));
+        assertTrue(small.getBuildReport().getResizeCount() > 0);
+        assertTrue(small.getBuildReport().getPeakArrayBytes() < report.getPeakArrayBytes());
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        small.saveBinary(actual);
+        assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+        small.build(map, new BuildOptions().setInitialSize(16));
+        actual = new ByteArrayOutputStream();
+        small.saveBinary(actual);
+        assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+        // 同一个对象重新构建更小的词典
+        small.build(map.headMap(keys[10]), new BuildOptions().setInitialSize(16));
+        assertEquals(9, small.exactMatchSearch(keys[9]));
+        // 没有词时check也要整个填满，不能只填初始空间
+        small.build(new TreeMap<String, String>(), new BuildOptions().setInitialSize(16));
+        assertTrue(small.parseText("abc").isEmpty());
+        assertEquals(1, small.getBuildReport().getSlotCount());
+        small.build(new String[0], new String[0], new BuildOptions().setInitialSize(16));
+        assertTrue(small.parseText("abc").isEmpty());
+        assertFalse(small.matches("abc"));
+
+        // 较低的密度阈值探测更少，但留下更多空位
+        AhoCorasickDoubleArrayTrie<String> sparse = new AhoCorasickDoubleArrayTrie<String>();
+        sparse.build(keys, keys, new BuildOptions().setDensityThreshold(0.5));
+        assertTrue(sparse.getBuildReport().getProbeCount() < report.getProbeCount());
+        assertTrue(sparse.getBuildReport().getFillRatio() < report.getFillRatio());
+        String text = loadText("en/text.txt");
+        assertEquals(defaults.parseText(text).toString(), sparse.parseText(text).toString());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        defaults.save(out);
         out.close();
-        System.out.println("Loading acdat from: " + tmpPath);
-        ObjectInputStream in = new ObjectInputStream(new FileInputStream(tmpPath));
-        acdat = (AhoCorasickDoubleArrayTrie<String>) in.readObject();
-        validateASimpleAhoCorasickDoubleArrayTrie(acdat);
+        AhoCorasickDoubleArrayTrie<String> loaded = new AhoCorasickDoubleArrayTrie<String>();
+        loaded.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertNull(loaded.getBuildReport());
+        try
+        {
+            new BuildOptions().setDensityThreshold(0);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
     }
 
-    public void testBuildEmptyTrie()
+    public void testRelayout() throws Exception
+    {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("en/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        String text = loadText("en/text.txt");
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(map, new BuildOptions().setCompactAlphabet(true).setDfaDepth(2));
+        String expected = acdat.parseText(text).toString();
+        String expectedLongest = acdat.parseText(text, MatchMode.LEFTMOST_LONGEST).toString();
+        BuildReport report = acdat.getBuildReport();
+
+        // 只用一半的文本采样，位置变了，匹配结果不变
+        acdat.relayout(text.substring(0, text.length() / 2));
+        BuildReport relaidOut = acdat.getBuildReport();
+        assertNotSame(report, relaidOut);
+        assertEquals(map.size(), relaidOut.getKeyCount());
+        assertEquals(report.getOccupiedSlotCount(), relaidOut.getOccupiedSlotCount());
+        assertTrue(relaidOut.getSlotCount() >= relaidOut.getOccupiedSlotCount());
+        assertTrue(relaidOut.getDfaNanos() > 0);
+        assertEquals(expected, acdat.parseText(text).toString());
+        assertEquals(expectedLongest, acdat.parseText(text, MatchMode.LEFTMOST_LONGEST).toString());
+        int index = 0;
+        for (String key : map.keySet())
+        {
+            assertEquals(index++, acdat.exactMatchSearch(key));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        acdat.save(out);
+        out.close();
+        AhoCorasickDoubleArrayTrie<String> loaded = new AhoCorasickDoubleArrayTrie<String>();
+        loaded.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(expected, loaded.parseText(text).toString());
+
+        AhoCorasickDoubleArrayTrie<String> empty = new AhoCorasickDoubleArrayTrie<String>();
+        empty.build(new TreeMap<String, String>());
+        empty.relayout(text);
+        assertTrue(empty.parseText(text).isEmpty());
+    }
+
+    public void testInterleaved() throws Exception
+    {
+        for (String language : new String[]{"en", "cn"})
+        {
+            TreeMap<String, String> map = new TreeMap<String, String>();
+            for (String key : loadDictionary(language + "/dictionary.txt"))
+            {
+                map.put(key, key);
+            }
+            String text = loadText(language + "/text.txt") + "￿";
+            for (boolean compactAlphabet : new boolean[]{false, true})
+            {
+                AhoCorasickDoubleArrayTrie<String> trie = new AhoCorasickDoubleArrayTrie<String>();
+                trie.build(map, new BuildOptions().setCompactAlphabet(compactAlphabet));
+                InterleavedAhoCorasickDoubleArrayTrie<String> interleaved = new InterleavedAhoCorasickDoubleArrayTrie<String>();
+                interleaved.build(trie);
+                assertEquals(trie.parseText(text).toString(), interleaved.parseText(text).toString());
+                HitBuffer expected = new HitBuffer(), actual = new HitBuffer();
+                trie.parseText(text, expected);
+                interleaved.parseText(text, actual);
+                assertEquals(expected.size(), actual.size());
+                int index = 0;
+                for (String key : map.keySet())
+                {
+                    assertEquals(index++, interleaved.exactMatchSearch(key));
+                }
+                assertNull(interleaved.get("￿"));
+                assertEquals(map.size(), interleaved.size());
+            }
+        }
+
+        InterleavedAhoCorasickDoubleArrayTrie<String> simple = new InterleavedAhoCorasickDoubleArrayTrie<String>();
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        map.put("he", "he");
+        map.put("hers", "hers");
+        map.put("she", "she");
+        simple.build(map);
+        AhoCorasickDoubleArrayTrie<String> trie = new AhoCorasickDoubleArrayTrie<String>();
+        trie.build(map);
+        assertEquals(trie.parseText("ushers").toString(), simple.parseText("ushers").toString());
+        assertEquals(3, simple.parseText("ushers").size());
+        assertTrue(simple.matches("ushers"));
+        assertFalse(simple.matches("uhrs"));
+        assertEquals("hers", simple.get("hers"));
+        assertNull(simple.get("her"));
+
+        simple.build(new TreeMap<String, String>());
+        assertFalse(simple.matches("ushers￿"));
+        assertEquals(-1, simple.exactMatchSearch(""));
+    }
+
+    public void testParseFile() throws Exception
     {
+        TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary("cn/dictionary.txt"))
+        {
+            map.put(key, key);
+        }
+        String text = loadText("cn/text.txt");
         AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
+        acdat.build(map);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try
+        {
+            // UTF-8按字节解码，UTF-16LE走CharsetDecoder
+            for (String charsetName : new String[]{"UTF-8", "UTF-16LE"})
+            {
+                Charset charset = Charset.forName(charsetName);
+                File file = writeTempFile(text.getBytes(charset));
+                long[] offsets = new long[text.length() + 1];
+                for (int i = 0; i < text.length(); ++i)
+                {
+                    offsets[i + 1] = offsets[i] + String.valueOf(text.charAt(i)).getBytes(charset).length;
+                }
+                List<String> expected = new ArrayList<String>();
+                for (Hit<String> hit : acdat.parseText(text))
+                {
+                    expected.add(offsets[hit.begin] + ":" + offsets[hit.end] + "=" + hit.value);
+                }
+                final List<String> sequential = new ArrayList<String>();
+                acdat.parseFile(file, charset, new AhoCorasickDoubleArrayTrie.IHitLong<String>()
+                {
+                    @Override
+                    public void hit(long begin, long end, String value)
+                    {
+                        sequential.add(begin + ":" + end + "=" + value);
+                    }
+                });
+                assertEquals(expected, sequential);
+                final List<String> parallel = new ArrayList<String>();
+                acdat.parseFile(file, charset, 4099, executor, new AhoCorasickDoubleArrayTrie.IHitLong<String>()
+                {
+                    @Override
+                    public void hit(long begin, long end, String value)
+                    {
+                        parallel.add(begin + ":" + end + "=" + value);
+                    }
+                });
+                assertEquals(expected, parallel);
+                file.delete();
+            }
+
+            // 增补字符占4个字节，非法字节替换为U+FFFD
+            AhoCorasickDoubleArrayTrie<String> simple = buildASimpleAhoCorasickDoubleArrayTrie();
+            File file = writeTempFile(new byte[]{(byte) 0xF0, (byte) 0xA0, (byte) 0x80, (byte) 0x80, 'h', 'e', (byte) 0xFF, 'h', 'i', 's'});
+            final List<String> hits = new ArrayList<String>();
+            AhoCorasickDoubleArrayTrie.IHitLong<String> processor = new AhoCorasickDoubleArrayTrie.IHitLong<String>()
+            {
+                @Override
+                public void hit(long begin, long end, String value)
+                {
+                    hits.add(begin + ":" + end + "=" + value);
+                }
+            };
+            simple.parseFile(file, Charset.forName("UTF-8"), processor);
+            assertEquals("[4:6=he, 7:10=his]", hits.toString());
+            hits.clear();
+            simple.parseFile(file, Charset.forName("UTF-8"), 3, executor, processor);
+            assertEquals("[4:6=he, 7:10=his]", hits.toString());
+            file.delete();
+
+            file = writeTempFile(new byte[0]);
+            hits.clear();
+            simple.parseFile(file, Charset.forName("UTF-8"), executor, processor);
+            simple.parseFile(file, Charset.forName("UTF-16LE"), processor);
+            assertTrue(hits.isEmpty());
+            file.delete();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static File writeTempFile(byte[] bytes) throws IOException
+    {
+        File file = File.createTempFile("acdat", ".txt");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        return file;
+    }
+
+    private AhoCorasickDoubleArrayTrie<String> buildAhoCorasickDoubleArrayTrie(String dictionaryPath) throws IOException
+    {
         TreeMap<String, String> map = new TreeMap<String, String>();
+        for (String key : loadDictionary(dictionaryPath))
+        {
+            map.put(key, key);
+        }
+        AhoCorasickDoubleArrayTrie<String> acdat = new AhoCorasickDoubleArrayTrie<String>();
         acdat.build(map);
-        assertEquals(0, acdat.size());
-        List<Hit<String>> hits = acdat.parseText("uhers");
-        assertEquals(0, hits.size());
+        return acdat;
     }
 }